@@ -0,0 +1,243 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many headless games at once, spread over the cores with a fork/join pool.
+ * <br/>
+ * Every game is given its own index, and the pieces and the inputs of the game are
+ * seeded from the seed of the batch and that index. Running the same batch twice
+ * therefore plays exactly the same games, no matter how many threads are used.
+ * <br/>
+ * The games are split in half until each part is small, and each part keeps its
+ * own Stats. The parts are merged as they are joined, so the threads never share
+ * a counter while the games are running.
+ */
+class BatchRunner {
+
+    // Below this many games a task plays them itself instead of splitting.
+    private static final int GAMES_PER_TASK = 16;
+
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final PieceGenerator.Mode mode;
+
+    /**
+     * Construct a runner for games on boards of the given size.
+     * @param rows      the number of rows of each board
+     * @param columns   the number of columns of each board
+     * @param seed      the seed of the batch
+     * @param mode      the way the pieces of each game are dealt
+     */
+    BatchRunner (int rows, int columns, long seed, PieceGenerator.Mode mode) {
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.mode = mode;
+    }
+
+    /**
+     * Plays a batch of games on the common fork/join pool.
+     * @param games     the number of games to play
+     * @return          the statistics of all the games
+     */
+    Stats run (int games) {
+        return run(games, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Plays a batch of games on the given pool.
+     * @param games     the number of games to play
+     * @param pool      the pool to play them on
+     * @return          the statistics of all the games
+     */
+    Stats run (int games, ForkJoinPool pool) {
+        return pool.invoke(new Games(0, games));
+    }
+
+    /**
+     * Plays one game with random inputs until it is over.
+     * @param game      the index of the game in the batch
+     * @return          the simulator of the finished game
+     */
+    Simulator play (int game) {
+        PieceGenerator pieces = mode.create(mix(seed, 2L * game));
+        SplittableRandom inputs = new SplittableRandom(mix(seed, 2L * game + 1));
+
+        Simulator simulator = new Simulator(new GameBoard(rows, columns, pieces));
+        Simulator.Input[] values = Simulator.Input.values();
+
+        while (!simulator.isGameOver()) {
+            simulator.apply(values[inputs.nextInt(values.length)]);
+            simulator.step();
+        }
+
+        return simulator;
+    }
+
+    /**
+     * Derives a well spread seed for one game, so that games next to each other
+     * in the batch do not get similar piece sequences.
+     */
+    private static long mix (long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Plays the games in [from, to), splitting the range while it is large.
+     */
+    private class Games extends RecursiveTask<Stats> {
+
+        private final int from;
+        private final int to;
+
+        Games (int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute () {
+            if (to - from <= GAMES_PER_TASK) {
+                Stats stats = new Stats();
+                for (int game = from; game < to; game++) {
+                    stats.add(play(game));
+                }
+                return stats;
+            }
+
+            int middle = (from + to) >>> 1;
+            Games left = new Games(from, middle);
+            left.fork();
+            Stats stats = new Games(middle, to).compute();
+            stats.merge(left.join());
+            return stats;
+        }
+
+    }
+
+    /**
+     * The totals of a number of games. A Stats is only ever written by one thread,
+     * and is handed to another thread only once it is finished.
+     */
+    static final class Stats {
+
+        // lineCounts[n] is the number of games that cleared n lines, with the
+        // last bucket holding every game that cleared at least that many.
+        private static final int BUCKETS = 64;
+
+        private long games = 0;
+        private long pieces = 0;
+        private long lines = 0;
+        private long score = 0;
+        private int minScore = Integer.MAX_VALUE;
+        private int maxScore = Integer.MIN_VALUE;
+        private final long[] lineCounts = new long[BUCKETS];
+
+        /**
+         * Adds a finished game to the totals.
+         * @param simulator     the simulator of the game
+         */
+        void add (Simulator simulator) {
+            int gameScore = simulator.getScore();
+            int gameLines = simulator.getLines();
+
+            games++;
+            pieces += simulator.getPieces();
+            lines += gameLines;
+            score += gameScore;
+            minScore = Math.min(minScore, gameScore);
+            maxScore = Math.max(maxScore, gameScore);
+            lineCounts[Math.min(gameLines, BUCKETS - 1)]++;
+        }
+
+        /**
+         * Adds the totals of other games to these totals.
+         * @param other     the totals to add
+         */
+        void merge (Stats other) {
+            games += other.games;
+            pieces += other.pieces;
+            lines += other.lines;
+            score += other.score;
+            minScore = Math.min(minScore, other.minScore);
+            maxScore = Math.max(maxScore, other.maxScore);
+            for (int i = 0; i < BUCKETS; i++) {
+                lineCounts[i] += other.lineCounts[i];
+            }
+        }
+
+        long getGames () {
+            return games;
+        }
+
+        long getPieces () {
+            return pieces;
+        }
+
+        long getLines () {
+            return lines;
+        }
+
+        long getScore () {
+            return score;
+        }
+
+        /**
+         * @return      the lowest score of any game, or 0 if there were no games
+         */
+        int getMinScore () {
+            return games == 0 ? 0 : minScore;
+        }
+
+        /**
+         * @return      the highest score of any game, or 0 if there were no games
+         */
+        int getMaxScore () {
+            return games == 0 ? 0 : maxScore;
+        }
+
+        /**
+         * @param lines     the number of lines
+         * @return          the number of games that cleared that many lines
+         */
+        long getGamesWithLines (int lines) {
+            return lineCounts[Math.min(lines, BUCKETS - 1)];
+        }
+
+        public String toString () {
+            return String.format("%d games, %d pieces, %d lines, score avg %.1f min %d max %d",
+                    games, pieces, lines, games == 0 ? 0.0 : (double) score / games,
+                    getMinScore(), getMaxScore());
+        }
+
+    }
+
+    /**
+     * Plays a batch of games and prints the statistics and the time it took.
+     * @param args  optionally, the number of games, the seed, the number of threads
+     *              and the mode of the piece generator (uniform or bag)
+     */
+    public static void main (String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        PieceGenerator.Mode mode = args.length > 3
+                ? PieceGenerator.Mode.valueOf(args[3].toUpperCase()) : PieceGenerator.Mode.UNIFORM;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Stats stats = new BatchRunner(18, 10, seed, mode).run(games, pool);
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        pool.shutdown();
+
+        System.out.println(stats);
+        System.out.printf("%d threads, %.2f seconds, %.0f games per second%n",
+                threads, elapsed, stats.getGames() / elapsed);
+    }
+
+}
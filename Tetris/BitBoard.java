@@ -0,0 +1,451 @@
+import java.util.Arrays;
+
+/**
+ * Stores the squares that have settled on the floor of the game board.
+ * <br/>
+ * Each row is kept as a single bitmask, where bit c is set if the Square in
+ * column c is occupied. This lets a whole row of a piece be tested against the
+ * board with one shift and one AND, and a full row can be detected by comparing
+ * its mask against the mask of a full row. The colors of the squares are kept
+ * in a separate plane which is only read when painting.
+ * <br/>
+ * The board also keeps its Zobrist hash, see Zobrist, up to date as squares are
+ * set and rows are removed.
+ * <br/>
+ * To scale to tall boards, the board counts its full rows and remembers the
+ * highest row that has a Square in it. Clearing lines does nothing when no row is
+ * full, and otherwise moves the rows of the stack down in one pass, never touching
+ * the empty rows above the stack.
+ * <br/>
+ * The height of every column and the number of squares are also kept up to date,
+ * so the aggregate height, the bumpiness and the number of holes of the board are
+ * known without scanning it. The number of Squares in a row is the bit count of
+ * its mask, so rows need no counter of their own.
+ */
+class BitBoard {
+
+    private final int rows;
+    private final int columns;
+    private final long fullRow;
+
+    private final long[] masks;
+    private long hash = 0;
+    private final int[][] colors;
+
+    private int top;            // The highest row with a Square in it, or rows if there is none.
+    private int fullRows = 0;   // The number of rows that are full.
+
+    private final int[] heights;    // The height of the highest Square of each column.
+    private int aggregateHeight = 0;
+    private int squares = 0;
+
+    /**
+     * Construct an empty board.
+     * @param rows      the number of rows
+     * @param columns   the number of columns, at most 64
+     */
+    BitBoard (int rows, int columns) {
+        if (rows < 1 || columns < 1 || columns > Long.SIZE) {
+            throw new IllegalArgumentException("Unsupported board size: " + rows + "x" + columns);
+        }
+
+        this.rows = rows;
+        this.columns = columns;
+        this.fullRow = fullRow(columns);
+
+        masks = new long[rows];
+        colors = new int[rows][columns];
+        heights = new int[columns];
+        top = rows;
+    }
+
+    int getRows () {
+        return rows;
+    }
+
+    int getColumns () {
+        return columns;
+    }
+
+    /**
+     * @param columns   the number of columns
+     * @return          the mask of a row where every Square is filled
+     */
+    static long fullRow (int columns) {
+        return columns == Long.SIZE ? -1L : (1L << columns) - 1;
+    }
+
+    /**
+     * Shifts a row mask of a piece over to column x of the board, dropping any
+     * Square that falls outside the board.
+     * @param mask  the row mask of the piece
+     * @param x     the x coordinate of the piece
+     * @return      the part of the mask that is inside the board
+     */
+    private long shift (long mask, int x) {
+        return shift(mask, x, fullRow);
+    }
+
+    private static long shift (long mask, int x, long fullRow) {
+        if (x <= -Long.SIZE || x >= Long.SIZE) return 0;
+        return (x >= 0 ? mask << x : mask >>> -x) & fullRow;
+    }
+
+    /**
+     * Check to see if a piece is in bounds and not overlapping on a board that is
+     * only given as its row masks, such as a copy of a board that is being searched.
+     * @param board     the mask of each row of the board
+     * @param columns   the number of columns of the board
+     * @param shape     the piece as one mask per row
+     * @param x         the x coordinate of the piece
+     * @param y         the y coordinate of the piece
+     * @return          true if the piece can be placed there
+     */
+    static boolean fits (long[] board, int columns, long[] shape, int x, int y) {
+        long fullRow = fullRow(columns);
+
+        for (int row = 0; row < shape.length; row++) {
+            long mask = shape[row];
+            if (mask == 0) continue;
+
+            if (y + row < 0 || y + row >= board.length) return false;
+
+            long shifted = shift(mask, x, fullRow);
+            if (Long.bitCount(shifted) != Long.bitCount(mask)) return false;
+            if ((shifted & board[y + row]) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check to see if every Square of a piece is inside the board.
+     * @param shape     the piece as one mask per row
+     * @param x         the x coordinate of the piece
+     * @param y         the y coordinate of the piece
+     * @return          true if it is in bounds
+     */
+    boolean isInBounds (long[] shape, int x, int y) {
+        for (int row = 0; row < shape.length; row++) {
+            long mask = shape[row];
+            if (mask == 0) continue;
+
+            if (y + row < 0 || y + row >= rows) return false;
+            if (Long.bitCount(shift(mask, x)) != Long.bitCount(mask)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check to see if any Square of a piece overlaps a settled Square.
+     * Squares that are outside the board are ignored.
+     * @param shape     the piece as one mask per row
+     * @param x         the x coordinate of the piece
+     * @param y         the y coordinate of the piece
+     * @return          true if it is overlapping another piece
+     */
+    boolean isOverlapping (long[] shape, int x, int y) {
+        for (int row = 0; row < shape.length; row++) {
+            if (y + row < 0 || y + row >= rows) continue;
+
+            if ((shift(shape[row], x) & masks[y + row]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param row   the row
+     * @return      the mask of the row, where bit c is set if column c is filled
+     */
+    long getMask (int row) {
+        return masks[row];
+    }
+
+    /**
+     * Empties every Square of the board.
+     */
+    void clear () {
+        for (int row = top; row < rows; row++) {
+            masks[row] = 0;
+            Arrays.fill(colors[row], 0);
+        }
+        hash = 0;
+        top = rows;
+        fullRows = 0;
+        Arrays.fill(heights, 0);
+        aggregateHeight = 0;
+        squares = 0;
+    }
+
+    /**
+     * @return      the highest row that has a Square in it, or the number of rows
+     *              if the board is empty
+     */
+    int getTop () {
+        return top;
+    }
+
+    /**
+     * @param row   the row
+     * @return      the number of Squares in the row
+     */
+    int getFilled (int row) {
+        return Long.bitCount(masks[row]);
+    }
+
+    /**
+     * @param column    the column
+     * @return          the number of rows from the floor up to and including the
+     *                  highest Square of the column, or 0 if the column is empty
+     */
+    int getHeight (int column) {
+        return heights[column];
+    }
+
+    /**
+     * @return      the sum of the heights of the columns
+     */
+    int getAggregateHeight () {
+        return aggregateHeight;
+    }
+
+    /**
+     * @return      the sum of the height differences of neighbouring columns
+     */
+    int getBumpiness () {
+        int bumps = 0;
+        for (int column = 1; column < columns; column++) {
+            bumps += Math.abs(heights[column] - heights[column - 1]);
+        }
+        return bumps;
+    }
+
+    /**
+     * @return      the number of empty Squares that have a Square somewhere above them
+     */
+    int getHoles () {
+        // Every Square below the top of a column is either filled or a hole.
+        return aggregateHeight - squares;
+    }
+
+    /**
+     * @return      the Zobrist hash of the settled squares
+     */
+    long getHash () {
+        return hash;
+    }
+
+    /**
+     * Fill a Square of the board.
+     * @param row       the row of the Square
+     * @param column    the column of the Square
+     * @param color     the color of the Square
+     */
+    void set (int row, int column, int color) {
+        long mask = masks[row];
+        hash ^= Zobrist.rowKey(row, mask);
+        masks[row] = mask | 1L << column;
+        hash ^= Zobrist.rowKey(row, masks[row]);
+        colors[row][column] = color;
+
+        if (mask != fullRow && masks[row] == fullRow) fullRows++;
+        if (row < top) top = row;
+
+        if ((mask >>> column & 1) == 0) {
+            squares++;
+            int height = rows - row;
+            if (height > heights[column]) {
+                aggregateHeight += height - heights[column];
+                heights[column] = height;
+            }
+        }
+    }
+
+    /**
+     * @param row       the row of the Square
+     * @param column    the column of the Square
+     * @return          the color of the Square, or 0 if it is empty
+     */
+    int getColor (int row, int column) {
+        return colors[row][column];
+    }
+
+    /**
+     * Removes every full row at or above a row, and moves the rows of the stack
+     * above them down to fill the space, in one pass from the bottom up. The rows
+     * below the given row must not be full.
+     * @param bottom    the lowest row that can be full
+     * @return          the number of rows removed
+     */
+    int removeFullRows (int bottom) {
+        if (fullRows == 0) return 0;
+
+        int write = bottom;
+        for (int read = bottom; read >= top; read--) {
+            long mask = masks[read];
+
+            if (mask == fullRow) {
+                hash ^= Zobrist.rowKey(read, mask);
+            } else if (write != read) {
+                hash ^= Zobrist.rowKey(read, mask) ^ Zobrist.rowKey(write, mask);
+                masks[write] = mask;
+
+                // The array at write belongs to a row that was removed or already
+                // moved, so swapping leaves a spare array behind.
+                int[] spare = colors[write];
+                colors[write] = colors[read];
+                colors[read] = spare;
+                write--;
+            } else {
+                write--;
+            }
+        }
+
+        // The rows from the old top down to write are now empty.
+        for (int row = top; row <= write; row++) {
+            masks[row] = 0;
+            Arrays.fill(colors[row], 0);
+        }
+
+        int removed = write - top + 1;
+        top = write + 1;
+        while (top < rows && masks[top] == 0) top++;
+        fullRows = 0;
+
+        squares -= removed * columns;
+        updateHeights(emptyColumns());
+        return removed;
+    }
+
+    /**
+     * Pushes the stack up and fills rows at the bottom with the same mask, such as
+     * garbage sent by an opponent. Squares pushed above the top row are lost.
+     * @param count     the number of rows to add
+     * @param mask      the mask of each added row, which must not be full
+     * @param color     the color of the added Squares
+     * @return          false if any Square was pushed off the board
+     */
+    boolean insertRows (int count, long mask, int color) {
+        count = Math.min(count, rows);
+        if (count <= 0) return true;
+
+        boolean fits = top >= count;
+        for (int row = top; row < rows; row++) {
+            hash ^= Zobrist.rowKey(row, masks[row]);
+            if (row < count) squares -= Long.bitCount(masks[row]);
+        }
+
+        // Every row from start down moves up by count, and the rows at the top of
+        // that range, which are empty or pushed off, become the new bottom rows.
+        int start = Math.max(0, top - count);
+        int[][] recycled = Arrays.copyOfRange(colors, start, start + count);
+        System.arraycopy(masks, start + count, masks, start, rows - count - start);
+        System.arraycopy(colors, start + count, colors, start, rows - count - start);
+
+        for (int i = 0; i < count; i++) {
+            int row = rows - count + i;
+            int[] garbage = recycled[i];
+            for (int column = 0; column < columns; column++) {
+                garbage[column] = (mask >>> column & 1) != 0 ? color : 0;
+            }
+            colors[row] = garbage;
+            masks[row] = mask;
+        }
+        squares += count * Long.bitCount(mask);
+
+        top = start;
+        while (top < rows && masks[top] == 0) top++;
+        for (int row = top; row < rows; row++) {
+            hash ^= Zobrist.rowKey(row, masks[row]);
+        }
+
+        fullRows = 0;
+        for (int row = top; row < rows; row++) {
+            if (masks[row] == fullRow) fullRows++;
+        }
+
+        if (fits) {
+            // Every column rises by count, and an empty one only by the added rows.
+            aggregateHeight = 0;
+            for (int column = 0; column < columns; column++) {
+                int height = heights[column];
+                if (height > 0) height += count;
+                else if ((mask >>> column & 1) != 0) height = count;
+                heights[column] = height;
+                aggregateHeight += height;
+            }
+        } else {
+            updateHeights(0);
+        }
+        return fits;
+    }
+
+    /**
+     * @return      the mask of the columns that have no Square in them
+     */
+    private long emptyColumns () {
+        long empty = 0;
+        for (int column = 0; column < columns; column++) {
+            if (heights[column] == 0) empty |= 1L << column;
+        }
+        return empty;
+    }
+
+    /**
+     * Finds the height of every column again, by looking down from the top of the
+     * stack until every column has been seen. Columns known to be empty are not
+     * looked for, so after rows were removed, which never fills a column, the scan
+     * stops at the old lowest column rather than running to the floor.
+     * @param empty     the mask of the columns known to have no Square in them
+     */
+    private void updateHeights (long empty) {
+        Arrays.fill(heights, 0);
+        aggregateHeight = 0;
+
+        long seen = empty;
+        for (int row = top; row < rows && seen != fullRow; row++) {
+            long tops = masks[row] & ~seen;
+            seen |= tops;
+            while (tops != 0) {
+                heights[Long.numberOfTrailingZeros(tops)] = rows - row;
+                aggregateHeight += rows - row;
+                tops &= tops - 1;
+            }
+        }
+    }
+
+    /**
+     * Copies the board into flat arrays.
+     * @param masks     receives the mask of each row
+     * @param colors    receives the color of each Square, row by row
+     */
+    void copyTo (long[] masks, int[] colors) {
+        copyTo(masks, colors, 0, rows - 1);
+    }
+
+    /**
+     * Copies some of the rows of the board into flat arrays, leaving the others as
+     * they are.
+     * @param masks     receives the mask of each row
+     * @param colors    receives the color of each Square, row by row
+     * @param top       the first row to copy
+     * @param bottom    the last row to copy
+     */
+    void copyTo (long[] masks, int[] colors, int top, int bottom) {
+        top = Math.max(top, 0);
+        bottom = Math.min(bottom, rows - 1);
+        if (top > bottom) return;
+
+        System.arraycopy(this.masks, top, masks, top, bottom - top + 1);
+        for (int row = top; row <= bottom; row++) {
+            System.arraycopy(this.colors[row], 0, colors, row * columns, columns);
+        }
+    }
+
+    /**
+     * @param masks     receives the mask of each row
+     */
+    void copyMasks (long[] masks) {
+        System.arraycopy(this.masks, 0, masks, 0, rows);
+    }
+
+}
@@ -0,0 +1,122 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Paints snapshots of a game board by copying pre-rendered images, see Sprites.
+ * <br/>
+ * The settled squares are kept on a stack image. Each time a snapshot is painted,
+ * the rows inside the clip of the graphics are compared with the rows that are on
+ * the stack, and only the rows that differ are redrawn. Rows outside the clip are
+ * neither compared nor shown, and are brought up to date when a later clip covers
+ * them, so the work of a frame depends on the height of the clip, not of the board.
+ * The clip should cover every row that has changed since the last paint, as the
+ * region given to repaint() by the Window does.
+ */
+final class BoardPainter {
+
+    private final int rows;
+    private final int columns;
+    private final int size;
+
+    private final Sprites sprites;
+    private final BufferedImage background;
+    private final BufferedImage stack;
+    private final int[] drawn;     // The colors of the squares on the stack.
+
+    /**
+     * Construct a painter for boards of the given size.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     * @param size      the size of each square
+     */
+    BoardPainter (int rows, int columns, int size) {
+        this.rows = rows;
+        this.columns = columns;
+        this.size = size;
+
+        sprites = Sprites.forSize(size);
+        background = sprites.createBackground(rows, columns);
+        stack = sprites.createBackground(rows, columns);
+        drawn = new int[rows * columns];
+    }
+
+    /**
+     * Paints the part of a snapshot of the board that is inside the clip of the
+     * graphics, or all of it if there is no clip.
+     * @param graphics  what to paint on
+     * @param snapshot  the board to paint
+     */
+    void paint (Graphics graphics, Snapshot snapshot) {
+
+        Rectangle clip = graphics.getClipBounds();
+        int top = 0, bottom = rows - 1;
+        if (clip != null) {
+            top = Math.max(top, clip.y / size);
+            bottom = Math.min(bottom, (clip.y + clip.height - 1) / size);
+        }
+
+        paintChangedRows(snapshot, top, bottom);
+        graphics.drawImage(stack, 0, 0, null);
+        paintActivePiece(graphics, snapshot);
+
+    }
+
+    /**
+     * Redraws the rows of the stack between two rows that differ from the snapshot.
+     * @param top       the first row to compare
+     * @param bottom    the last row to compare
+     */
+    private void paintChangedRows (Snapshot snapshot, int top, int bottom) {
+
+        Graphics2D graphics = null;
+
+        for (int row = Math.max(top, 0); row <= bottom; row++) {
+            int from = row * columns;
+            int to = from + columns;
+            if (Arrays.equals(drawn, from, to, snapshot.colors, from, to)) continue;
+
+            if (graphics == null) graphics = stack.createGraphics();
+            System.arraycopy(snapshot.colors, from, drawn, from, columns);
+
+            int y1 = row * size;
+            int y2 = y1 + size;
+            int width = columns * size;
+            graphics.drawImage(background, 0, y1, width, y2, 0, y1, width, y2, null);
+
+            for (int column = 0; column < columns; column++) {
+                int color = drawn[from + column];
+                if (color < 0) {
+                    paintPiece(graphics, row, column, color);
+                }
+            }
+        }
+
+        if (graphics != null) graphics.dispose();
+    }
+
+    private void paintActivePiece (Graphics graphics, Snapshot snapshot) {
+
+        Piece.Rotation rotation = snapshot.getRotation();
+        int color = snapshot.getShape().getColor();
+
+        // The ghost shows where the piece would land, and is hidden behind the piece.
+        if (snapshot.getGhostY() > snapshot.getY()) {
+            for (int square = 0; square < rotation.getSquares(); square++) {
+                graphics.drawImage(sprites.getGhost(color),
+                        (snapshot.getX() + rotation.getColumn(square)) * size,
+                        (snapshot.getGhostY() + rotation.getRow(square)) * size, null);
+            }
+        }
+
+        for (int square = 0; square < rotation.getSquares(); square++) {
+            paintPiece(graphics, snapshot.getY() + rotation.getRow(square),
+                    snapshot.getX() + rotation.getColumn(square), color);
+        }
+    }
+
+    private void paintPiece (Graphics graphics, int row, int column, int color) {
+        graphics.drawImage(sprites.getTile(color), column * size, row * size, null);
+    }
+
+}
@@ -0,0 +1,514 @@
+import java.util.stream.IntStream;
+
+/**
+ * Plays Tetris by searching every placement of the piece that is dropping.
+ * <br/>
+ * A placement is a rotation and a column that the piece can reach from where it is:
+ * it is rotated clockwise in place, slid left or right, and dropped straight down.
+ * Each placement is tried on a copy of the row masks of the board, using the same
+ * collision check as the board, and the board it leaves behind is scored by a
+ * Heuristic. The placement with the best score is chosen.
+ * <br/>
+ * The boards are scored from the height of each column and the number of Squares,
+ * which start from the ones the GameBoard keeps and are carried down the search.
+ * A placement that clears nothing only raises the columns it covers, so scoring it
+ * does not scan the board. Only a placement that clears rows looks for the new
+ * heights, from the top of the stack down.
+ * <br/>
+ * With a depth of more than one, the score of a placement is the best score of the
+ * pieces that follow it. Pieces that are shown in the preview of the board are
+ * searched as they are, and pieces beyond it are averaged over every shape. The placements of the
+ * first piece are then scored in parallel on the common fork/join pool.
+ * <br/>
+ * The same board is often reached by placing pieces in a different order. Given a
+ * TranspositionTable, the bot caches the score of every board it reaches, keyed by
+ * the Zobrist hash of the board, the pieces still known and the depth left.
+ */
+class Bot {
+
+    /**
+     * Scores a board by a weighted sum of its aggregate height, holes, bumpiness
+     * and the lines that were cleared to reach it. Higher is better.
+     */
+    static final class Heuristic {
+
+        private final double height;
+        private final double lines;
+        private final double holes;
+        private final double bumpiness;
+
+        /**
+         * @param height        the weight of the sum of the heights of the columns
+         * @param lines         the weight of the lines cleared
+         * @param holes         the weight of the empty Squares that have a filled Square above them
+         * @param bumpiness     the weight of the sum of the height differences of neighbouring columns
+         */
+        Heuristic (double height, double lines, double holes, double bumpiness) {
+            this.height = height;
+            this.lines = lines;
+            this.holes = holes;
+            this.bumpiness = bumpiness;
+        }
+
+        /**
+         * @return      weights that were tuned for clearing as many lines as possible
+         */
+        static Heuristic standard () {
+            return new Heuristic(-0.510066, 0.760666, -0.35663, -0.184483);
+        }
+
+        /**
+         * @param cleared   the number of lines cleared
+         * @return          the part of the score that comes from clearing them
+         */
+        double cleared (int cleared) {
+            return lines * cleared;
+        }
+
+        /**
+         * Scores a board, not counting the lines cleared to reach it. Every Square
+         * below the top of a column is either filled or a hole, so the holes are
+         * the aggregate height less the number of Squares.
+         * @param heights   the height of each column, see GameBoard.getColumnHeight()
+         * @param columns   the number of columns of the board
+         * @param squares   the number of Squares on the board
+         * @return          the score of the board
+         */
+        double evaluate (int[] heights, int columns, int squares) {
+            int aggregate = heights[0];
+            int bumps = 0;
+            for (int column = 1; column < columns; column++) {
+                aggregate += heights[column];
+                bumps += Math.abs(heights[column] - heights[column - 1]);
+            }
+            return height * aggregate + holes * (aggregate - squares) + bumpiness * bumps;
+        }
+
+    }
+
+    /**
+     * Where to put a piece.
+     */
+    static final class Placement {
+
+        private final int turns;
+        private final int rotation;
+        private final int x;
+        private final int y;
+        private final double score;
+
+        Placement (int turns, int rotation, int x, int y, double score) {
+            this.turns = turns;
+            this.rotation = rotation;
+            this.x = x;
+            this.y = y;
+            this.score = score;
+        }
+
+        /**
+         * @return      the number of clockwise rotations needed to reach the placement
+         */
+        int getTurns () {
+            return turns;
+        }
+
+        /**
+         * @return      the index of the rotation of the shape
+         */
+        int getRotation () {
+            return rotation;
+        }
+
+        int getX () {
+            return x;
+        }
+
+        int getY () {
+            return y;
+        }
+
+        double getScore () {
+            return score;
+        }
+
+        public String toString () {
+            return "rotation " + rotation + " at (" + x + ", " + y + ") scoring " + score;
+        }
+
+    }
+
+    // Scratch space for one thread.
+    private static final class Context {
+
+        final long[][] boards;
+        final int[][] heights;
+        final int[][] candidates;
+
+        Context (int depth, int rows) {
+            boards = new long[depth][rows];
+            heights = new int[depth][Long.SIZE];
+            candidates = new int[depth][MAX_CANDIDATES * 3];
+        }
+
+    }
+
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+    private static final double DEAD = -1e9;
+    private static final int MAX_CANDIDATES = 4 * Long.SIZE;
+
+    private final Heuristic heuristic;
+    private final int depth;
+    private final TranspositionTable table;
+    private final ThreadLocal<Context> contexts = new ThreadLocal<>();
+
+    /**
+     * Construct a bot that only looks at the piece that is dropping.
+     */
+    Bot () {
+        this(Heuristic.standard(), 1);
+    }
+
+    /**
+     * Construct a bot.
+     * @param heuristic     how to score the boards
+     * @param depth         the number of pieces to search, at least 1
+     */
+    Bot (Heuristic heuristic, int depth) {
+        this(heuristic, depth, null);
+    }
+
+    /**
+     * Construct a bot that caches the scores of the boards it searches.
+     * @param heuristic     how to score the boards
+     * @param depth         the number of pieces to search, at least 1
+     * @param table         the cache of scores, or null to not cache them
+     */
+    Bot (Heuristic heuristic, int depth, TranspositionTable table) {
+        if (depth < 1) throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        this.heuristic = heuristic;
+        this.depth = depth;
+        this.table = table;
+    }
+
+    /**
+     * Finds the best placement of the piece that is dropping.
+     * @param gameBoard     the board, whose preview gives the pieces that follow
+     * @return              the best placement, or null if the piece cannot be placed
+     */
+    Placement choose (GameBoard gameBoard) {
+        int rows = gameBoard.getRows();
+        int columns = gameBoard.getColumns();
+        Piece piece = gameBoard.getPiece();
+        Piece.Shape shape = piece.getShape();
+        PieceQueue next = gameBoard.getPreview();
+
+        long[] board = new long[rows];
+        gameBoard.copyMasks(board);
+        long hash = gameBoard.getBoardHash();
+
+        int[] heights = new int[columns];
+        for (int column = 0; column < columns; column++) heights[column] = gameBoard.getColumnHeight(column);
+        int squares = gameBoard.getAggregateHeight() - gameBoard.getHoles();
+
+        // Every (turns, x, y) the piece can reach, three ints each.
+        int[] candidates = new int[MAX_CANDIDATES * 3];
+        int count = enumerate(board, columns, shape, piece.getRotationIndex(),
+                piece.getX(), piece.getY(), candidates);
+        if (count == 0) return null;
+
+        double[] scores = new double[count];
+        IntStream indices = IntStream.range(0, count);
+        if (depth > 1) indices = indices.parallel();
+
+        indices.forEach(i -> {
+            Context context = context(rows);
+            int turns = candidates[i * 3];
+            int rotation = rotate(shape, piece.getRotationIndex(), turns);
+            scores[i] = score(board, hash, heights, squares, columns, shape.getRotation(rotation),
+                    candidates[i * 3 + 1], candidates[i * 3 + 2], 1, next, context);
+        });
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+
+        int turns = candidates[best * 3];
+        return new Placement(turns, rotate(shape, piece.getRotationIndex(), turns),
+                candidates[best * 3 + 1], candidates[best * 3 + 2], scores[best]);
+    }
+
+    /**
+     * Chooses a placement for the piece that is dropping and moves it there.
+     * @param simulator     the game to play
+     * @return              the result of the last input
+     */
+    Simulator.Result play (Simulator simulator) {
+        if (simulator.isGameOver()) return Simulator.Result.GAME_OVER;
+
+        return play(simulator, choose(simulator.getGameBoard()));
+    }
+
+    /**
+     * Moves the piece that is dropping to a placement and drops it.
+     * @param simulator     the game to play
+     * @param placement     where to put the piece, or null to drop it where it is
+     * @return              the result of the last input
+     */
+    Simulator.Result play (Simulator simulator, Placement placement) {
+        if (simulator.isGameOver()) return Simulator.Result.GAME_OVER;
+        if (placement == null) return simulator.apply(Simulator.Input.HARD_DROP);
+
+        for (int turn = 0; turn < placement.getTurns(); turn++) {
+            simulator.apply(Simulator.Input.ROTATE_CLOCKWISE);
+        }
+
+        int x = simulator.getGameBoard().getPiece().getX();
+        Simulator.Input slide = placement.getX() < x ? Simulator.Input.LEFT : Simulator.Input.RIGHT;
+        for (int i = 0; i < Math.abs(placement.getX() - x); i++) {
+            simulator.apply(slide);
+        }
+
+        return simulator.apply(Simulator.Input.HARD_DROP);
+    }
+
+    private Context context (int rows) {
+        Context context = contexts.get();
+        if (context == null || context.boards[0].length != rows) {
+            context = new Context(depth, rows);
+            contexts.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Scores a placement, including the best placements of the pieces after it
+     * while there is depth left.
+     * @param board     the board before the placement, which is not changed
+     * @param hash      the Zobrist hash of the board
+     * @param heights   the height of each column of the board, which are not changed
+     * @param squares   the number of Squares on the board
+     * @param level     how many pieces have been placed before this one, plus one
+     */
+    private double score (long[] board, long hash, int[] heights, int squares, int columns,
+                          Piece.Rotation rotation, int x, int y, int level, PieceQueue next, Context context) {
+
+        int rows = board.length;
+        long[] after = context.boards[level - 1];
+        System.arraycopy(board, 0, after, 0, rows);
+
+        long[] masks = rotation.getMasks();
+        for (int row = 0; row < masks.length; row++) {
+            if (masks[row] != 0) hash ^= Zobrist.rowKey(y + row, board[y + row]);
+        }
+
+        int cleared = place(after, columns, rotation, x, y);
+        squares += rotation.getSquares() - cleared * columns;
+
+        int[] afterHeights = context.heights[level - 1];
+        if (cleared == 0) {
+            System.arraycopy(heights, 0, afterHeights, 0, columns);
+            for (int row = 0; row < masks.length; row++) {
+                if (masks[row] == 0) continue;
+                hash ^= Zobrist.rowKey(y + row, after[y + row]);
+
+                // The top row of the piece in a column comes first, and sets its height.
+                long covered = x >= 0 ? masks[row] << x : masks[row] >>> -x;
+                for (long bits = covered; bits != 0; bits &= bits - 1) {
+                    int column = Long.numberOfTrailingZeros(bits);
+                    afterHeights[column] = Math.max(afterHeights[column], rows - y - row);
+                }
+            }
+        } else {
+            hash = Zobrist.hash(after);
+            long covered = 0;
+            for (long mask : masks) covered |= x >= 0 ? mask << x : mask >>> -x;
+            findHeights(after, columns, heights, covered, Math.min(y, rows - max(heights, columns)), afterHeights);
+        }
+
+        return heuristic.cleared(cleared) + value(after, hash, afterHeights, squares, columns, level, next, context);
+    }
+
+    /**
+     * Finds the height of every column of a board after a piece was placed and
+     * rows were cleared, looking down from a row until every column that had a
+     * Square before, or was covered by the piece, has been seen. Clearing rows
+     * never fills an empty column.
+     * @param board     the board after the rows were cleared
+     * @param before    the height of each column before the piece was placed
+     * @param covered   the mask of the columns the piece covered
+     * @param from      a row at or above the top of the stack
+     * @param heights   receives the height of each column
+     */
+    private static void findHeights (long[] board, int columns, int[] before, long covered, int from,
+                                     int[] heights) {
+        int rows = board.length;
+        long fullRow = BitBoard.fullRow(columns);
+        long seen = 0;
+        for (int column = 0; column < columns; column++) {
+            heights[column] = 0;
+            if (before[column] == 0 && (covered >>> column & 1) == 0) seen |= 1L << column;
+        }
+
+        for (int row = Math.max(from, 0); row < rows && seen != fullRow; row++) {
+            long tops = board[row] & ~seen;
+            seen |= tops;
+            for (; tops != 0; tops &= tops - 1) {
+                heights[Long.numberOfTrailingZeros(tops)] = rows - row;
+            }
+        }
+    }
+
+    private static int max (int[] heights, int columns) {
+        int max = 0;
+        for (int column = 0; column < columns; column++) max = Math.max(max, heights[column]);
+        return max;
+    }
+
+    /**
+     * Scores a board that has been reached after some pieces were placed, not
+     * counting the lines cleared on the way to it. The scores are cached in the
+     * transposition table, if there is one.
+     * @param level     the number of pieces that have been placed
+     */
+    private double value (long[] board, long hash, int[] heights, int squares, int columns, int level,
+                          PieceQueue next, Context context) {
+
+        long key = 0;
+        if (table != null) {
+            key = hash ^ Zobrist.depthKey(depth - level);
+            for (int i = level - 1, slot = 1; i < next.getDepth() && i < depth - 1; i++, slot++) {
+                key ^= Zobrist.pieceKey(next.peek(i), slot);
+            }
+
+            double cached = table.get(key, depth - level);
+            if (!Double.isNaN(cached)) return cached;
+        }
+
+        double value;
+        if (level == depth) {
+            value = heuristic.evaluate(heights, columns, squares);
+        } else if (level - 1 < next.getDepth()) {
+            value = best(board, hash, heights, squares, columns, next.peek(level - 1), level + 1, next, context);
+        } else {
+            double total = 0;
+            for (Piece.Shape shape : SHAPES) {
+                total += best(board, hash, heights, squares, columns, shape, level + 1, next, context);
+            }
+            value = total / SHAPES.length;
+        }
+
+        if (table != null) table.put(key, depth - level, value);
+        return value;
+    }
+
+    /**
+     * @return      the best score of any placement of a new piece of a shape
+     */
+    private double best (long[] board, long hash, int[] heights, int squares, int columns,
+                         Piece.Shape shape, int level, PieceQueue next, Context context) {
+
+        int[] candidates = context.candidates[level - 1];
+        int count = enumerate(board, columns, shape, 0, (columns / 2) - 2, 0, candidates);
+
+        double best = DEAD;
+        for (int i = 0; i < count; i++) {
+            Piece.Rotation rotation = shape.getRotation(candidates[i * 3]);
+            best = Math.max(best, score(board, hash, heights, squares, columns, rotation,
+                    candidates[i * 3 + 1], candidates[i * 3 + 2], level, next, context));
+        }
+        return best;
+    }
+
+    /**
+     * Lists every placement a piece can reach by rotating clockwise where it is,
+     * sliding, and dropping straight down.
+     * @param candidates    receives (turns, x, y) for each placement
+     * @return              the number of placements
+     */
+    private static int enumerate (long[] board, int columns, Piece.Shape shape, int rotation,
+                                  int x, int y, int[] candidates) {
+        int count = 0;
+
+        for (int turns = 0; turns < shape.getRotations(); turns++) {
+            long[] masks = shape.getRotation(rotate(shape, rotation, turns)).getMasks();
+            if (!BitBoard.fits(board, columns, masks, x, y)) break;
+
+            int left = x;
+            while (BitBoard.fits(board, columns, masks, left - 1, y)) left--;
+            int right = x;
+            while (BitBoard.fits(board, columns, masks, right + 1, y)) right++;
+
+            for (int column = left; column <= right; column++) {
+                int row = y;
+                while (BitBoard.fits(board, columns, masks, column, row + 1)) row++;
+
+                candidates[count * 3] = turns;
+                candidates[count * 3 + 1] = column;
+                candidates[count * 3 + 2] = row;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static int rotate (Piece.Shape shape, int rotation, int turns) {
+        return (rotation + turns) % shape.getRotations();
+    }
+
+    /**
+     * Adds a piece to a board and removes the rows it fills.
+     * @return      the number of rows removed
+     */
+    private static int place (long[] board, int columns, Piece.Rotation rotation, int x, int y) {
+        long[] masks = rotation.getMasks();
+        for (int row = 0; row < masks.length; row++) {
+            if (masks[row] != 0) {
+                board[y + row] |= x >= 0 ? masks[row] << x : masks[row] >>> -x;
+            }
+        }
+
+        long fullRow = BitBoard.fullRow(columns);
+        int write = board.length - 1;
+        for (int read = board.length - 1; read >= 0; read--) {
+            if (board[read] != fullRow) board[write--] = board[read];
+        }
+
+        int cleared = write + 1;
+        for (int row = 0; row <= write; row++) board[row] = 0;
+        return cleared;
+    }
+
+    /**
+     * Lets the bot play games and prints how fast it places pieces and how many
+     * lines it clears.
+     * @param args  optionally, the number of games, the depth, the seed and the
+     *              number of entries of the transposition table
+     */
+    public static void main (String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int entries = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        int maxPieces = 10_000;
+
+        Bot bot = new Bot(Heuristic.standard(), depth, entries > 0 ? new TranspositionTable(entries) : null);
+        long pieces = 0, lines = 0;
+        long start = System.nanoTime();
+
+        for (int game = 0; game < games; game++) {
+            Simulator simulator = new Simulator(new GameBoard(18, 10, PieceGenerator.bag(seed + game)));
+            while (!simulator.isGameOver() && simulator.getPieces() < maxPieces) {
+                bot.play(simulator);
+            }
+            pieces += simulator.getPieces();
+            lines += simulator.getLines();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d games, %d pieces, %d lines, %.0f pieces per second%n",
+                games, pieces, lines, pieces / elapsed);
+    }
+
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records written by a DatasetWriter.
+ * <br/>
+ * The file is memory-mapped and every field is read straight from the mapping by
+ * the index of its record, so nothing is copied or allocated per record. A file
+ * larger than one mapping can hold is mapped as several windows, each holding a
+ * whole number of records. Files whose writer was not closed are refused, as the
+ * records at their end may never have been written.
+ */
+final class DatasetReader {
+
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+
+    // The most bytes of a window, less than the 2 GB a mapping can hold.
+    private static final int WINDOW_BYTES = 1 << 30;
+
+    private final int rows;
+    private final int columns;
+    private final int rowBytes;
+    private final int recordSize;
+    private final int recordsPerWindow;
+    private final long count;
+    private final MappedByteBuffer[] windows;
+
+    /**
+     * Opens a file of records.
+     * @param path          the file to read
+     * @throws IOException  if the file cannot be read, is not a dataset, or its
+     *                      writer was not closed
+     */
+    DatasetReader (Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), DatasetWriter.HEADER));
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (header.limit() < DatasetWriter.HEADER || header.getInt(0) != DatasetWriter.MAGIC) {
+                throw new IOException("Not a dataset: " + path);
+            }
+            rows = header.getInt(4);
+            columns = header.getInt(8);
+            recordSize = header.getInt(12);
+            rowBytes = DatasetWriter.rowBytes(columns);
+
+            // The unused end of the last chunk of a file that was not closed reads
+            // as records of an empty board, so the count cannot be guessed.
+            count = header.getLong(16);
+            if (count == DatasetWriter.NOT_CLOSED) {
+                throw new IOException("The writer of the dataset was not closed: " + path);
+            }
+            if (count < 0 || DatasetWriter.HEADER + count * recordSize > channel.size()) {
+                throw new IOException("The dataset is shorter than its records: " + path);
+            }
+
+            recordsPerWindow = Math.max(1, WINDOW_BYTES / recordSize);
+            windows = new MappedByteBuffer[(int) ((count + recordsPerWindow - 1) / recordsPerWindow)];
+            for (int i = 0; i < windows.length; i++) {
+                long first = (long) i * recordsPerWindow;
+                long size = Math.min(recordsPerWindow, count - first) * recordSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        DatasetWriter.HEADER + first * recordSize, size);
+                windows[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    int getRows () {
+        return rows;
+    }
+
+    int getColumns () {
+        return columns;
+    }
+
+    /**
+     * @return      the number of records
+     */
+    long getCount () {
+        return count;
+    }
+
+    /**
+     * @param record    the index of the record
+     * @param row       the row, from the top
+     * @return          the mask of the settled Squares of the row
+     */
+    long getMask (long record, int row) {
+        MappedByteBuffer window = window(record);
+        int offset = offset(record) + row * rowBytes;
+        long mask = 0;
+        for (int i = 0; i < rowBytes; i++) {
+            mask |= (window.get(offset + i) & 0xFFL) << (i * 8);
+        }
+        return mask;
+    }
+
+    /**
+     * @param record    the index of the record
+     * @param board     the array to copy the row masks into, at least as long as the number of rows
+     */
+    void copyMasks (long record, long[] board) {
+        for (int row = 0; row < rows; row++) {
+            board[row] = getMask(record, row);
+        }
+    }
+
+    /**
+     * @param record    the index of the record
+     * @return          the shape of the piece
+     */
+    Piece.Shape getShape (long record) {
+        return SHAPES[window(record).get(offset(record) + rows * rowBytes)];
+    }
+
+    /**
+     * @param record    the index of the record
+     * @return          the index of the rotation the piece was placed in
+     */
+    int getRotation (long record) {
+        return window(record).get(offset(record) + rows * rowBytes + 1);
+    }
+
+    /**
+     * @param record    the index of the record
+     * @return          the column the piece was placed at
+     */
+    int getX (long record) {
+        return window(record).get(offset(record) + rows * rowBytes + 2);
+    }
+
+    /**
+     * @param record    the index of the record
+     * @return          true if the game ended with the placement
+     */
+    boolean isDone (long record) {
+        return window(record).get(offset(record) + rows * rowBytes + 3) != 0;
+    }
+
+    /**
+     * @param record    the index of the record
+     * @return          the points the placement scored
+     */
+    float getReward (long record) {
+        return window(record).getFloat(offset(record) + rows * rowBytes + 4);
+    }
+
+    private MappedByteBuffer window (long record) {
+        return windows[(int) (record / recordsPerWindow)];
+    }
+
+    private int offset (long record) {
+        return (int) (record % recordsPerWindow) * recordSize;
+    }
+
+    /**
+     * Reads every record of the given files and prints how many there are, how
+     * many games they hold and the points they scored.
+     * @param args  the files to read
+     * @throws IOException  if a file cannot be read
+     */
+    public static void main (String[] args) throws IOException {
+        long records = 0, games = 0, filled = 0;
+        double reward = 0;
+        long start = System.nanoTime();
+
+        for (String file : args) {
+            DatasetReader reader = new DatasetReader(Path.of(file));
+            for (long record = 0; record < reader.getCount(); record++) {
+                reward += reader.getReward(record);
+                if (reader.isDone(record)) games++;
+                for (int row = 0; row < reader.getRows(); row++) {
+                    filled += Long.bitCount(reader.getMask(record, row));
+                }
+            }
+            records += reader.getCount();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d records, %d finished games, %.3f points and %.2f Squares per record, %.0f records per second%n",
+                records, games, records == 0 ? 0.0 : reward / records, records == 0 ? 0.0 : (double) filled / records,
+                records / elapsed);
+    }
+
+}
@@ -0,0 +1,233 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes (board, piece, action, reward) records of headless games for training
+ * models, see DatasetReader for reading them.
+ * <br/>
+ * Every record has the same width, so a record is found by its index alone. The
+ * file starts with a header of HEADER bytes holding the size of the board, the
+ * width of a record and the number of records, which is NOT_CLOSED until the writer
+ * is closed. Each record then holds:
+ * <ul>
+ *     <li>the settled Squares, one row after the other from the top, each row as
+ *     its mask in the fewest whole bytes that fit the columns;</li>
+ *     <li>the shape of the piece that is dropping, as a byte;</li>
+ *     <li>the rotation and the column it was placed at, as bytes;</li>
+ *     <li>a byte that is 1 if the game ended with this placement;</li>
+ *     <li>the points the placement scored, as a float.</li>
+ * </ul>
+ * Everything is little-endian. The records are put into a direct buffer that holds
+ * a whole number of them, and the buffer is written to the end of the file each
+ * time it is full, so the file grows a chunk at a time and never holds more than
+ * the records written. The file is never mapped, so nothing keeps it mapped once
+ * the writer is closed. Nothing is forced to the disk until the writer is closed.
+ * A writer is only used by one thread, and
+ * many threads write many files, one each, without sharing anything.
+ */
+final class DatasetWriter implements Closeable {
+
+    static final int MAGIC = 0x54445331; // "TDS1"
+    static final int HEADER = 32;
+
+    /**
+     * The number of records in the header of a file whose writer was not closed.
+     */
+    static final long NOT_CLOSED = -1;
+
+    // How much is written to the file at a time.
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final int rows;
+    private final int rowBytes;
+    private final int recordSize;
+    private final ByteBuffer chunk;
+
+    private long count = 0;     // Records written.
+
+    /**
+     * Starts a new file of records.
+     * @param path          the file to write, which is replaced if it exists
+     * @param rows          the number of rows of the boards
+     * @param columns       the number of columns of the boards
+     * @throws IOException  if the file cannot be opened
+     */
+    DatasetWriter (Path path, int rows, int columns) throws IOException {
+        this.rows = rows;
+        this.rowBytes = rowBytes(columns);
+        this.recordSize = recordSize(rows, columns);
+        this.chunk = ByteBuffer.allocateDirect(Math.max(1, CHUNK_BYTES / recordSize) * recordSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(rows);
+        header.putInt(columns);
+        header.putInt(recordSize);
+        header.putLong(NOT_CLOSED);
+
+        // The whole header is written, padding and all, so an empty file can be read.
+        header.rewind();
+        channel.write(header, 0);
+        channel.position(HEADER);
+    }
+
+    /**
+     * @param columns   the number of columns of a board
+     * @return          the number of bytes a row of the board is written in
+     */
+    static int rowBytes (int columns) {
+        return (columns + 7) / 8;
+    }
+
+    /**
+     * @param rows      the number of rows of a board
+     * @param columns   the number of columns of a board
+     * @return          the number of bytes of a record of the board
+     */
+    static int recordSize (int rows, int columns) {
+        return rows * rowBytes(columns) + 4 + Float.BYTES;
+    }
+
+    /**
+     * @return      the number of records written
+     */
+    long getCount () {
+        return count;
+    }
+
+    /**
+     * Writes a record.
+     * @param board     the row masks of the settled Squares, before the piece was placed
+     * @param shape     the shape of the piece
+     * @param rotation  the index of the rotation the piece was placed in
+     * @param x         the column the piece was placed at
+     * @param reward    the points the placement scored
+     * @param done      true if the game ended with the placement
+     * @throws IOException  if the records cannot be written
+     */
+    void write (long[] board, Piece.Shape shape, int rotation, int x, float reward, boolean done)
+            throws IOException {
+        ByteBuffer chunk = this.chunk;
+        if (!chunk.hasRemaining()) flush();
+
+        for (int row = 0; row < rows; row++) {
+            long mask = board[row];
+            for (int i = 0; i < rowBytes; i++) {
+                chunk.put((byte) (mask >>> (i * 8)));
+            }
+        }
+        chunk.put((byte) shape.ordinal());
+        chunk.put((byte) rotation);
+        chunk.put((byte) x);
+        chunk.put((byte) (done ? 1 : 0));
+        chunk.putFloat(reward);
+        count++;
+    }
+
+    /**
+     * Writes the records in the buffer to the end of the file, and empties it.
+     */
+    private void flush () throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) channel.write(chunk);
+        chunk.clear();
+    }
+
+    /**
+     * Writes the records that are left and the number of records into the header,
+     * forces the file to the disk and closes it.
+     * @throws IOException  if the file cannot be written
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            flush();
+
+            ByteBuffer footer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            footer.putLong(count).flip();
+            channel.write(footer, 16);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Lets the bot play games on every core, and writes a record of every piece it
+     * places. Each thread writes its own file, part-N.bin, in the given directory.
+     * @param args  the directory, and optionally the number of games, the seed and
+     *              the number of threads
+     * @throws Exception    if a file cannot be written
+     */
+    public static void main (String[] args) throws Exception {
+        Path directory = Path.of(args.length > 0 ? args[0] : "dataset");
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int rows = 18, columns = 10, maxPieces = 10_000;
+
+        Files.createDirectories(directory);
+        Bot bot = new Bot();
+        Thread[] workers = new Thread[threads];
+        long[] counts = new long[threads];
+        Exception[] failures = new Exception[threads];
+        long start = System.nanoTime();
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                Path path = directory.resolve(String.format("part-%05d.bin", worker));
+                long[] board = new long[rows];
+
+                try (DatasetWriter writer = new DatasetWriter(path, rows, columns)) {
+                    for (int game = worker; game < games; game += threads) {
+                        Simulator simulator = new Simulator(new GameBoard(rows, columns, PieceGenerator.bag(seed + game)));
+
+                        while (!simulator.isGameOver() && simulator.getPieces() < maxPieces) {
+                            GameBoard gameBoard = simulator.getGameBoard();
+                            Bot.Placement placement = bot.choose(gameBoard);
+                            Piece piece = gameBoard.getPiece();
+                            Piece.Shape shape = piece.getShape();
+                            int rotation = placement == null ? piece.getRotationIndex() : placement.getRotation();
+                            int x = placement == null ? piece.getX() : placement.getX();
+                            int score = simulator.getScore();
+                            gameBoard.copyMasks(board);
+
+                            // The board reuses the piece, so it is read before the next one spawns.
+                            bot.play(simulator, placement);
+                            writer.write(board, shape, rotation, x,
+                                    simulator.getScore() - score, simulator.isGameOver());
+                        }
+                    }
+                    counts[worker] = writer.getCount();
+                } catch (Exception ex) {
+                    failures[worker] = ex;
+                }
+            }, "Dataset Writer " + worker);
+            workers[t].start();
+        }
+
+        long records = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            if (failures[t] != null) throw failures[t];
+            records += counts[t];
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d records in %d files, %.2f seconds, %.0f records per second%n",
+                records, threads, elapsed, records / elapsed);
+    }
+
+}
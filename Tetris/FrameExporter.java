@@ -0,0 +1,288 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns a game into a sequence of frames for videos and thumbnails, without a display.
+ * <br/>
+ * Frames are drawn on the thread that plays the game, into one of a few images that
+ * are used over and over, and are then encoded on a pool of worker threads while
+ * the game goes on. When every image is waiting to be encoded, the game waits for
+ * one to be free. Frames are either written as numbered PNG files into a folder, or
+ * as raw 24 bit RGB into one file, which a video encoder such as ffmpeg can read.
+ * Every raw frame is the same size and is written at its own place in the file, so
+ * the workers never wait for each other.
+ * <br/>
+ * A frame is drawn straight into the pixels of its image by a FrameRenderer, or by
+ * a BoardPainter through Java2D, and both give the same pixels.
+ */
+final class FrameExporter implements Closeable {
+
+    /**
+     * The ways frames can be written.
+     */
+    enum Format {
+        PNG,    // A frame000000.png file per frame, in a folder.
+        RAW     // Every frame after the other in one file, as RGB bytes, row by row.
+    }
+
+    private final Format format;
+    private final Path output;
+    private final FileChannel channel;      // Null unless the format is RAW.
+
+    private final FrameRenderer renderer;
+    private final BoardPainter painter;     // Null unless frames are painted with Java2D.
+
+    private final ExecutorService workers;
+    private final BlockingQueue<Frame> free;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private long frames = 0;
+
+    /**
+     * Construct an exporter, and create the folder or file the frames go into.
+     * @param rows      the number of rows of the board
+     * @param columns   the number of columns of the board
+     * @param size      the size of each square
+     * @param output    the folder for PNG frames, or the file for raw frames
+     * @param format    how to write the frames
+     * @param java2d    true to paint the frames with a BoardPainter
+     * @param threads   the number of threads that encode frames
+     * @throws IOException  if the folder or file cannot be created
+     */
+    FrameExporter (int rows, int columns, int size, Path output, Format format,
+                   boolean java2d, int threads) throws IOException {
+        this.format = format;
+        this.output = output;
+        this.renderer = new FrameRenderer(rows, columns, size);
+        this.painter = java2d ? new BoardPainter(rows, columns, size) : null;
+
+        if (format == Format.PNG) {
+            Files.createDirectories(output);
+            channel = null;
+            ImageIO.setUseCache(false);
+        } else {
+            channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Frame Encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Two frames per worker, so a worker has the next one ready when it finishes.
+        free = new ArrayBlockingQueue<>(2 * threads);
+        for (int i = 0; i < 2 * threads; i++) free.add(new Frame());
+    }
+
+    /**
+     * Draws a snapshot into the next frame, and hands it to a worker to be written.
+     * @param snapshot      the board to draw
+     * @throws IOException  if an earlier frame could not be written, or the thread
+     *                      is interrupted while waiting for a free frame
+     */
+    void write (Snapshot snapshot) throws IOException {
+        checkFailure();
+
+        Frame frame;
+        try {
+            frame = free.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a frame");
+        }
+
+        if (painter != null) {
+            Graphics2D graphics = frame.image.createGraphics();
+            painter.paint(graphics, snapshot);
+            graphics.dispose();
+        } else {
+            renderer.render(snapshot, frame.pixels);
+        }
+
+        frame.index = frames++;
+        workers.execute(() -> {
+            try {
+                encode(frame);
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+            } finally {
+                free.add(frame);
+            }
+        });
+    }
+
+    private void encode (Frame frame) throws IOException {
+        if (format == Format.PNG) {
+            Path file = output.resolve(String.format("frame%06d.png", frame.index));
+            if (!ImageIO.write(frame.image, "png", file.toFile())) throw new IOException("No PNG writer");
+            return;
+        }
+
+        ByteBuffer rgb = frame.rgb;
+        rgb.clear();
+        for (int pixel : frame.pixels) {
+            rgb.put((byte) (pixel >>> 16));
+            rgb.put((byte) (pixel >>> 8));
+            rgb.put((byte) pixel);
+        }
+        rgb.flip();
+
+        long position = frame.index * rgb.capacity();
+        while (rgb.hasRemaining()) {
+            position += channel.write(rgb, position);
+        }
+    }
+
+    private void checkFailure () throws IOException {
+        Throwable ex = failure.get();
+        if (ex instanceof IOException) throw (IOException) ex;
+        if (ex != null) throw new IOException("A frame could not be written", ex);
+    }
+
+    /**
+     * @return      the number of frames that have been drawn
+     */
+    long getFrames () {
+        return frames;
+    }
+
+    /**
+     * @return      the width of a frame in pixels
+     */
+    int getWidth () {
+        return renderer.getWidth();
+    }
+
+    /**
+     * @return      the height of a frame in pixels
+     */
+    int getHeight () {
+        return renderer.getHeight();
+    }
+
+    /**
+     * Waits for every frame to be written, and closes the file.
+     * @throws IOException  if a frame could not be written
+     */
+    @Override
+    public void close () throws IOException {
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting, the frames that are left are still being written.
+            }
+        } catch (InterruptedException ex) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing frames");
+        } finally {
+            if (channel != null) channel.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * An image that a frame is drawn into, and the bytes it is encoded into.
+     */
+    private final class Frame {
+
+        private final BufferedImage image = renderer.createFrame();
+        private final int[] pixels = FrameRenderer.pixels(image);
+        private final ByteBuffer rgb = format == Format.RAW ? ByteBuffer.allocate(3 * pixels.length) : null;
+        private long index;
+
+    }
+
+    /**
+     * Plays a game and writes a frame of it for each tick of a replay, or for each
+     * piece a bot places, and prints how many frames were written per second.
+     * @param args  -replay FILE to draw a replay, otherwise a bot plays -pieces N
+     *              pieces from -seed N; -png FOLDER or -raw FILE for where the frames
+     *              go, -size N for the size of each square, -threads N for the number
+     *              of encoding threads, and -java2d to paint the frames with Java2D
+     * @throws IOException  if the replay cannot be read or the frames cannot be written
+     */
+    public static void main (String[] args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+
+        Path replay = null;
+        Path output = Path.of("frames");
+        Format format = Format.PNG;
+        int size = 20;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int pieces = 1000;
+        long seed = 0;
+        boolean java2d = false;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-replay") && i + 1 < args.length) {
+                replay = Path.of(args[++i]);
+            } else if (args[i].equals("-png") && i + 1 < args.length) {
+                output = Path.of(args[++i]);
+                format = Format.PNG;
+            } else if (args[i].equals("-raw") && i + 1 < args.length) {
+                output = Path.of(args[++i]);
+                format = Format.RAW;
+            } else if (args[i].equals("-size") && i + 1 < args.length) {
+                size = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-pieces") && i + 1 < args.length) {
+                pieces = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-java2d")) {
+                java2d = true;
+            }
+        }
+
+        ReplayPlayer player = replay == null ? null : new ReplayPlayer(replay);
+        GameBoard gameBoard = player != null ? player.getGameBoard() : new GameBoard(18, 10, PieceGenerator.bag(seed));
+        Snapshot snapshot = new Snapshot(gameBoard.getRows(), gameBoard.getColumns(), 0);
+        long start = System.nanoTime();
+
+        FrameExporter exporter = new FrameExporter(gameBoard.getRows(), gameBoard.getColumns(), size,
+                output, format, java2d, threads);
+        try (exporter) {
+            if (player != null) {
+                for (long tick = 0; player.hasNext(); tick++) {
+                    player.playUntil(tick);
+                    player.getGameBoard().copyTo(snapshot);
+                    exporter.write(snapshot);
+                }
+            } else {
+                Bot bot = new Bot();
+                Simulator simulator = new Simulator(gameBoard);
+                gameBoard.copyTo(snapshot);
+                exporter.write(snapshot);
+                while (!simulator.isGameOver() && simulator.getPieces() < pieces) {
+                    bot.play(simulator);
+                    gameBoard.copyTo(snapshot);
+                    exporter.write(snapshot);
+                }
+            }
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d frames of %dx%d to %s, %.2f seconds, %.0f frames per second%n",
+                exporter.getFrames(), exporter.getWidth(), exporter.getHeight(), output, elapsed,
+                exporter.getFrames() / elapsed);
+    }
+
+}
@@ -0,0 +1,145 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Draws snapshots of a game board straight into packed RGB pixels, without Java2D.
+ * <br/>
+ * The frames look exactly like the ones BoardPainter paints, as they are built from
+ * the same images, see Sprites. Every image is copied into an int array once, and
+ * the ghost is blended with both colors of the checkerboard up front, so drawing a
+ * frame is only array copies: the empty board, then each row of pixels of every
+ * Square that is filled. Rows of the board with nothing in them are skipped. A
+ * renderer keeps no state between frames, so frames can be drawn in any order.
+ */
+final class FrameRenderer {
+
+    private static final int COLORS = 8; // The seven shapes, and garbage.
+
+    private final int rows;
+    private final int columns;
+    private final int size;
+    private final int width;
+
+    private final int[] background;
+    private final int[][] tiles = new int[COLORS][];
+    private final int[][][] ghosts = new int[COLORS][2][];     // Over the dark and the light Squares.
+
+    /**
+     * Construct a renderer for boards of the given size.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     * @param size      the size of each square
+     */
+    FrameRenderer (int rows, int columns, int size) {
+        this.rows = rows;
+        this.columns = columns;
+        this.size = size;
+        this.width = columns * size;
+
+        Sprites sprites = Sprites.forSize(size);
+        background = pixels(sprites.createBackground(rows, columns));
+
+        // The two colors of the checkerboard, see Sprites.createBackground().
+        BufferedImage squares = sprites.createBackground(1, 2);
+        for (int i = 0; i < COLORS; i++) {
+            int color = -1 - i;
+            tiles[i] = copy(sprites.getTile(color));
+            for (int shade = 0; shade < 2; shade++) {
+                BufferedImage ghost = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = ghost.createGraphics();
+                graphics.drawImage(squares, -shade * size, 0, null);
+                graphics.drawImage(sprites.getGhost(color), 0, 0, null);
+                graphics.dispose();
+                ghosts[i][shade] = pixels(ghost);
+            }
+        }
+    }
+
+    /**
+     * @return      a new image the size of a frame, whose pixels can be drawn into
+     *              with render()
+     */
+    BufferedImage createFrame () {
+        return new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * @param frame     an image made by createFrame()
+     * @return          the pixels of the image, which are written straight into it
+     */
+    static int[] pixels (BufferedImage frame) {
+        return ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Copies the pixels of a shared image, leaving the image as it is.
+     */
+    private static int[] copy (BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * @return      the width of a frame in pixels
+     */
+    int getWidth () {
+        return width;
+    }
+
+    /**
+     * @return      the height of a frame in pixels
+     */
+    int getHeight () {
+        return rows * size;
+    }
+
+    /**
+     * Draws a snapshot of the board.
+     * @param snapshot  the board to draw, which must be the size of this renderer
+     * @param pixels    receives the frame, row by row, as 0xRRGGBB in the low bytes
+     */
+    void render (Snapshot snapshot, int[] pixels) {
+
+        System.arraycopy(background, 0, pixels, 0, background.length);
+
+        for (int row = 0; row < rows; row++) {
+            for (long bits = snapshot.masks[row]; bits != 0; bits &= bits - 1) {
+                int column = Long.numberOfTrailingZeros(bits);
+                blit(tiles[index(snapshot.colors[row * columns + column])], row, column, pixels);
+            }
+        }
+
+        Piece.Rotation rotation = snapshot.getRotation();
+        int color = index(snapshot.getShape().getColor());
+
+        // The ghost shows where the piece would land, and is hidden behind the piece.
+        if (snapshot.getGhostY() > snapshot.getY()) {
+            for (int square = 0; square < rotation.getSquares(); square++) {
+                int row = snapshot.getGhostY() + rotation.getRow(square);
+                int column = snapshot.getX() + rotation.getColumn(square);
+                blit(ghosts[color][(row + column) % 2], row, column, pixels);
+            }
+        }
+
+        for (int square = 0; square < rotation.getSquares(); square++) {
+            blit(tiles[color], snapshot.getY() + rotation.getRow(square),
+                    snapshot.getX() + rotation.getColumn(square), pixels);
+        }
+
+    }
+
+    private static int index (int color) {
+        return Math.floorMod(-1 - color, COLORS);
+    }
+
+    /**
+     * Copies the pixels of a Square into the frame, one row of pixels at a time.
+     */
+    private void blit (int[] tile, int row, int column, int[] pixels) {
+        int offset = row * size * width + column * size;
+        for (int line = 0; line < size; line++, offset += width) {
+            System.arraycopy(tile, line * size, pixels, offset, size);
+        }
+    }
+
+}
@@ -3,28 +3,80 @@ import java.awt.*;
 /**
  * Creates and contains the environment and rules of the game.
  * <br/>
- * Many of the methods work by creating a doppelganger of the piece before moving
- * the actual piece, to check for validity. For example, the method moveLeft() creates
- * a deep copy of the piece that is dropping and moves the clone piece one Square to the
- * left. Then it checks if the clone piece is in a valid position (in bounds and not
- * overlapping another piece). If the position is valid, then the original is moved over
- * to where the doppelganger is and the doppelganger is deleted. Otherwise, the original
- * piece is not moved.
+ * Many of the methods work by checking the position a piece would move to before
+ * moving the actual piece. For example, the method moveLeft() checks if the shape of
+ * the piece that is dropping is in a valid position (in bounds and not overlapping
+ * another piece) one Square to the left of where it is now. If the position is valid,
+ * then the piece is moved. Otherwise, the piece is not moved. Nothing is allocated
+ * while checking, so the moves can be called as often as needed.
  */
 class GameBoard {
 
-    private static int ROWS;
-    private static int COLUMNS;
+    /**
+     * The color of the Squares of garbage rows, see addGarbage().
+     */
+    static final int GARBAGE = -8;
 
-    private int[][] gameBoard;
+    /**
+     * The number of pieces a board shows ahead unless it is told otherwise.
+     */
+    static final int PREVIEWS = 5;
+
+    private final int rows;
+    private final int columns;
+
+    private final BitBoard gameBoard;
+    private final PieceGenerator generator;
+    private final PieceQueue preview;
     private Piece piece;
+    private Piece.Shape held;       // Null until a piece is held.
+    private boolean canHold = true;
+
+    private final int sizeOfPiece;
 
-    private static int sizeOfPiece;
+    // Built the first time the board is painted directly.
+    private BoardPainter painter;
+    private Snapshot snapshot;
 
-    private static int startPositionX;
-    private static int startPositionY;
+    // The part of the board that has changed since takeDirtyRegion() was last
+    // called, in Squares. It is empty when dirtyTop > dirtyBottom.
+    private int dirtyTop, dirtyBottom, dirtyLeft, dirtyRight;
 
+    private final int startPositionX;
+    private final int startPositionY;
+
+    private Scoring scoring = Scoring.guideline();
+    private Metrics metrics;    // Null unless the board records what it does.
     private int score = 0;
+    private int lines = 0;
+    private int level = 1;
+    private int combo = -1;     // Locks in a row that cleared lines, less one.
+    private int lastCleared = 0;
+    private boolean gameOver = false;
+
+    // The rows touched by the last piece that was locked.
+    private int lockedTop;
+    private int lockedBottom;
+
+    /**
+     * Construct a game board that is never painted, for running games without a display.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     */
+    GameBoard (int rows, int columns) {
+        this(rows, columns, 0);
+    }
+
+    /**
+     * Construct a game board that is never painted, with its own source of pieces.
+     * Boards given generators of the same mode and seed are dealt the same pieces.
+     * @param rows          the number of rows
+     * @param columns       the number of columns
+     * @param generator     the source of the pieces, used only by this board
+     */
+    GameBoard (int rows, int columns, PieceGenerator generator) {
+        this(rows, columns, 0, generator);
+    }
 
     /**
      * Construct the game board.
@@ -33,62 +85,242 @@ class GameBoard {
      * @param size      the size of each square
      */
     GameBoard (int rows, int columns, int size) {
-        ROWS = rows;
-        COLUMNS = columns;
+        this(rows, columns, size, PieceGenerator.uniform());
+    }
+
+    /**
+     * Construct the game board. Every board has its own state, so many boards
+     * can be played at once on different threads.
+     * @param rows          the number of rows
+     * @param columns       the number of columns
+     * @param size          the size of each square
+     * @param generator     the source of the pieces, used only by this board
+     */
+    GameBoard (int rows, int columns, int size, PieceGenerator generator) {
+        this(rows, columns, size, generator, PREVIEWS);
+    }
+
+    /**
+     * Construct the game board, showing a number of the pieces that come next.
+     * @param rows          the number of rows
+     * @param columns       the number of columns
+     * @param size          the size of each square
+     * @param generator     the source of the pieces, used only by this board
+     * @param previews      the number of pieces to show ahead
+     */
+    GameBoard (int rows, int columns, int size, PieceGenerator generator, int previews) {
+        this.rows = rows;
+        this.columns = columns;
         sizeOfPiece = size;
 
-        startPositionX = (COLUMNS / 2) - 2;
+        startPositionX = (columns / 2) - 2;
         startPositionY = 0;
 
-        gameBoard = new int[ROWS][COLUMNS];
+        this.generator = generator;
+        preview = new PieceQueue(generator, previews);
+        gameBoard = new BitBoard(rows, columns);
+        clearDirtyRegion();
+        markRows(0, rows - 1);
         createNewPiece();
     }
 
     /**
-     * Create a new piece to drop from the top of the screen.
-     * Exits the game if it cannot spawn a piece without overlapping
-     * another piece.
+     * Create a new piece to drop from the top of the screen, from the front of the
+     * preview. The new piece may be held.
      */
     private void createNewPiece () {
-        piece = new Piece(startPositionX, startPositionY);
+        spawn(preview.take());
+        canHold = true;
+        if (metrics != null) metrics.pieceSpawned();
+    }
+
+    /**
+     * Puts a piece at the top of the screen. The game is over if it cannot spawn a
+     * piece without overlapping another piece.
+     * @param shape     the shape of the piece
+     */
+    private void spawn (Piece.Shape shape) {
+        if (piece == null) piece = new Piece(shape, startPositionX, startPositionY);
+        else piece.reset(shape, startPositionX, startPositionY);
+        markPiece();
         if (isOverlappingAnotherPiece(piece)) {
-            System.out.println("Final Score: " + score);
-            System.exit(0);
+            gameOver = true;
         }
     }
 
     /**
-     * Check to see if a piece is in bounds.
-     * @param piece     the piece to check
-     * @return          true if it is in bounds
+     * Puts the piece that is dropping in the hold, and spawns the piece that was held
+     * before it in its place, or the next piece if none was. A piece can only be held
+     * once each time a piece is locked, so pieces cannot be swapped back and forth.
+     * Does nothing once the game is over.
+     * @return  true if the piece was held
      */
-    private boolean isInBounds (Piece piece) {
+    boolean hold () {
 
-        int[][] array = piece.getArray(); // Get the piece as an array.
-        boolean xLessThanWidth, xMoreThanZero;
-        boolean yLessThanHeight, yMoreThanZero;
-        boolean xInBounds, yInBounds;
+        if (gameOver || !canHold) return false;
 
-        // For each element in the array, check if it is out of bounds.
-        for (int row = 0; row < array.length; row++) {
-            for (int column = 0; column < array[0].length; column++) {
-                if (array[row][column] == 1) {
+        Piece.Shape shape = piece.getShape();
+        markPiece();
+        spawn(held != null ? held : preview.take());
+        held = shape;
+        canHold = false;
+        return true;
 
-                    xLessThanWidth = (piece.getX() + column) < COLUMNS;
-                    xMoreThanZero = (piece.getX() + column) >= 0;
-                    yLessThanHeight = (piece.getY() + row) < ROWS;
-                    yMoreThanZero = (piece.getY() + row) >= 0;
+    }
 
-                    xInBounds = xLessThanWidth && xMoreThanZero;
-                    yInBounds = yLessThanHeight && yMoreThanZero;
+    /**
+     * @return      the shape that is held, or null if no piece has been held yet
+     */
+    Piece.Shape getHeld () {
+        return held;
+    }
 
-                    if (!xInBounds || !yInBounds) return false;
+    /**
+     * @return      true if the piece that is dropping can be held
+     */
+    boolean canHold () {
+        return !gameOver && canHold;
+    }
 
-                }
-            }
-        }
+    /**
+     * @return      the pieces that come after the one that is dropping, which must
+     *              not be taken from except through this board
+     */
+    PieceQueue getPreview () {
+        return preview;
+    }
 
-        return true;
+    /**
+     * @param row   the row
+     * @return      the number of settled Squares in the row
+     */
+    int getFilled (int row) {
+        return gameBoard.getFilled(row);
+    }
+
+    /**
+     * @param column    the column
+     * @return          the number of rows from the floor up to and including the
+     *                  highest settled Square of the column, or 0 if the column is empty
+     */
+    int getColumnHeight (int column) {
+        return gameBoard.getHeight(column);
+    }
+
+    /**
+     * @return      the sum of the heights of the columns
+     */
+    int getAggregateHeight () {
+        return gameBoard.getAggregateHeight();
+    }
+
+    /**
+     * @return      the sum of the height differences of neighbouring columns
+     */
+    int getBumpiness () {
+        return gameBoard.getBumpiness();
+    }
+
+    /**
+     * @return      the number of empty Squares that have a settled Square somewhere above them
+     */
+    int getHoles () {
+        return gameBoard.getHoles();
+    }
+
+    /**
+     * @return      the highest row with a settled Square in it, or the number of rows
+     *              if there is none
+     */
+    int getStackTop () {
+        return gameBoard.getTop();
+    }
+
+    /**
+     * @return      the number of lines cleared by the last piece that was locked
+     */
+    int getLastCleared () {
+        return lastCleared;
+    }
+
+    /**
+     * @return      true if the last piece could not be spawned
+     */
+    boolean isGameOver () {
+        return gameOver;
+    }
+
+    int getRows () {
+        return rows;
+    }
+
+    int getColumns () {
+        return columns;
+    }
+
+    /**
+     * @return      the size of each square when painted
+     */
+    int getSizeOfPiece () {
+        return sizeOfPiece;
+    }
+
+    int getScore () {
+        return score;
+    }
+
+    /**
+     * @return      the source of the pieces of this board
+     */
+    PieceGenerator getGenerator () {
+        return generator;
+    }
+
+    /**
+     * @return      the number of rows that have been cleared
+     */
+    int getLines () {
+        return lines;
+    }
+
+    /**
+     * @return      the level, which goes up as rows are cleared, see Scoring
+     */
+    int getLevel () {
+        return level;
+    }
+
+    /**
+     * @return      the number of locks in a row just before the last one that
+     *              cleared lines, or -1 if the last lock cleared none
+     */
+    int getCombo () {
+        return combo;
+    }
+
+    /**
+     * Sets the rules of the score and the level. Boards use Scoring.guideline()
+     * unless they are given another, which should happen before the game starts.
+     * @param scoring   the scoring
+     */
+    void setScoring (Scoring scoring) {
+        this.scoring = scoring;
+        level = scoring.level(lines);
+    }
+
+    Scoring getScoring () {
+        return scoring;
+    }
+
+    /**
+     * Makes the board record the pieces it spawns and the lines it clears, counting
+     * the piece that is dropping as spawned. Boards record nothing unless they are
+     * given metrics, so games run without a display do not touch them.
+     * @param metrics   the metrics to record into
+     */
+    void setMetrics (Metrics metrics) {
+        this.metrics = metrics;
+        metrics.pieceSpawned();
     }
 
     /**
@@ -97,22 +329,25 @@ class GameBoard {
      * @return          true if it is overlapping another piece
      */
     private boolean isOverlappingAnotherPiece (Piece piece) {
+        return gameBoard.isOverlapping(piece.getRotation().getMasks(), piece.getX(), piece.getY());
+    }
 
-        int[][] array = piece.getArray(); // Get the piece as an array.
-
-        // For each element in the array, check if it overlaps another piece.
-        for (int row = 0; row < array.length; row++)
-            for (int column = 0; column < array[0].length; column++)
-                if (array[row][column] == 1
-                        && piece.getX() + column >= 0
-                        && piece.getX() + column < COLUMNS
-                        && piece.getY() + row >= 0
-                        && piece.getY() + row< ROWS
-                        && gameBoard[piece.getY() + row][piece.getX() + column] != 0)
-                    return true;
-
-        return false;
+    /**
+     * Check to see if a rotation of a shape would be in a valid position (in bounds
+     * and not overlapping another piece) at the given coordinate.
+     * @param shape     the shape to check
+     * @param rotation  the index of the rotation of the shape
+     * @param x         the x coordinate of the shape
+     * @param y         the y coordinate of the shape
+     * @return          true if the shape can be placed there
+     */
+    boolean isValidPosition (Piece.Shape shape, int rotation, int x, int y) {
+        return isValidPosition(shape.getRotation(rotation), x, y);
+    }
 
+    private boolean isValidPosition (Piece.Rotation rotation, int x, int y) {
+        long[] masks = rotation.getMasks();
+        return gameBoard.isInBounds(masks, x, y) && !gameBoard.isOverlapping(masks, x, y);
     }
 
     /**
@@ -121,237 +356,431 @@ class GameBoard {
      */
     private void lock () {
 
-        int[][] array = piece.getArray();
+        Piece.Rotation rotation = piece.getRotation();
+
+        lockedTop = rows;
+        lockedBottom = -1;
 
-        for (int row = 0; row < array.length; row++) {
-            for (int column = 0; column < array[0].length; column++) {
-                if (array[row][column] == 1) {
-                    gameBoard[piece.getY() + row][piece.getX() + column] = piece.getColor();
-                }
-            }
+        for (int square = 0; square < rotation.getSquares(); square++) {
+            int row = piece.getY() + rotation.getRow(square);
+            int column = piece.getX() + rotation.getColumn(square);
+
+            gameBoard.set(row, column, piece.getColor());
+            lockedTop = Math.min(lockedTop, row);
+            lockedBottom = Math.max(lockedBottom, row);
         }
+
+        markRows(lockedTop, lockedBottom);
     }
 
     /**
      * Moves the piece that is dropping down one Square if possible, otherwise lock it.
+     * Does nothing once the game is over.
      * @return  true if the piece moved down successfully one square
      */
     boolean moveDown () {
 
-        Piece clone = piece.clone();
-        clone.moveDown();
+        if (gameOver) return false;
 
-        if (isInBounds(clone) && !isOverlappingAnotherPiece(clone)) {
+        if (isValidPosition(piece.getRotation(), piece.getX(), piece.getY() + 1)) {
+            markPiece();
             piece.moveDown();
+            markPiece();
             return true;
         }
         else {
-            lock();
-            createNewPiece();
-            removeRow();
+            settle();
             return false;
         }
 
     }
 
     /**
-     * Checks to see if a row has been filled, if so, removeRow it.
+     * Moves the piece that is dropping down one Square by hand, which scores points,
+     * or locks it if it cannot move. Does nothing once the game is over.
+     * @return  true if the piece moved down successfully one square
      */
-    private void removeRow() {
+    boolean softDrop () {
+        if (!moveDown()) return false;
 
-        int identicalColumns;
+        score += scoring.softDrop(1);
+        return true;
+    }
 
-        for (int row = 0; row < ROWS; row++) {
+    /**
+     * Moves the piece that is dropping down by up to a number of Squares in one move,
+     * stopping where it lands. Unlike moveDown(), the piece is never locked.
+     * Does nothing once the game is over.
+     * @param rows  the most Squares to move down
+     * @return      the number of Squares the piece fell
+     */
+    int fall (int rows) {
 
-            identicalColumns = 0;
+        if (gameOver || rows <= 0) return 0;
 
-            for (int column = 0; column < COLUMNS; column++) {
-                if (gameBoard[row][column] < 0) {
-                    identicalColumns++;
-                }
-                if (identicalColumns == COLUMNS) {
-                    removeRow(row);
-                }
-            }
+        int fallen = Math.min(rows, getLandingY() - piece.getY());
+        if (fallen > 0) {
+            markPiece();
+            piece.moveDown(fallen);
+            markPiece();
         }
+        return fallen;
+
+    }
+
+    /**
+     * Drops the piece that is dropping straight down to where it lands, and locks it.
+     * Does nothing once the game is over.
+     * @return  the number of Squares the piece fell
+     */
+    int hardDrop () {
+
+        if (gameOver) return 0;
+
+        int fallen = getLandingY() - piece.getY();
+        markPiece();
+        piece.moveDown(fallen);
+        score += scoring.hardDrop(fallen);
+        settle();
+        return fallen;
+
     }
 
     /**
-     * Removes a row and moves all the pieces above it one Square down to fill the space.
-     * @param rowToDelete   the row to delete
+     * Pushes the stack up and adds garbage rows at the bottom, each with a single
+     * empty Square in the same column. The dropping piece is pushed up with the
+     * stack if it would overlap it. The game is over if any Square is pushed off
+     * the top, or the piece cannot be pushed up far enough.
+     * @param count     the number of rows to add
+     * @param hole      the column of the empty Square
      */
-    private void removeRow (int rowToDelete) {
-        for (int row = rowToDelete; row > 0; row--) {
-            for (int column = 0; column < COLUMNS; column++) {
-                gameBoard[row][column] = gameBoard[row - 1][column];
-            }
+    void addGarbage (int count, int hole) {
+
+        if (gameOver || count <= 0) return;
+
+        long mask = BitBoard.fullRow(columns) & ~(1L << hole);
+        markPiece();
+        if (!gameBoard.insertRows(count, mask, GARBAGE)) gameOver = true;
+
+        // The stack moved up by count rows, so the piece moves up by at most as many.
+        Piece.Rotation rotation = piece.getRotation();
+        for (int pushed = 0; pushed < count && !isValidPosition(rotation, piece.getX(), piece.getY()); pushed++) {
+            piece.moveDown(-1);
         }
-        score += 10;
+        if (!isValidPosition(rotation, piece.getX(), piece.getY())) gameOver = true;
+
+        markRows(0, rows - 1);
+
     }
 
     /**
-     * Move the piece that is dropping left one Square.
+     * Finds where the piece that is dropping would land if it fell straight down.
+     * <br/>
+     * Everything above the highest Square of a column is empty, so a piece that is
+     * above the stack falls until the lowest Square of one of its columns meets the
+     * top of that column. Only a piece that was slid under an overhang has to be
+     * moved down a Square at a time.
+     * @return      the y coordinate the piece would land at
      */
-    void moveLeft () {
-        Piece clone = piece.clone();
-        clone.moveLeft();
+    int getLandingY () {
+        Piece.Rotation rotation = piece.getRotation();
+        int x = piece.getX();
+        int y = piece.getY();
+        int landing = Integer.MAX_VALUE;
+
+        for (int column = 0; column < rotation.getSize(); column++) {
+            int bottom = rotation.getBottom(column);
+            if (bottom < 0) continue;
+
+            // The lowest row the Square can fall to, on top of the column.
+            int floor = rows - 1 - gameBoard.getHeight(x + column);
+            if (y + bottom > floor) return fall(rotation, x, y);
+
+            landing = Math.min(landing, floor - bottom);
+        }
+        return landing;
+    }
+
+    private int fall (Piece.Rotation rotation, int x, int y) {
+        while (isValidPosition(rotation, x, y + 1)) y++;
+        return y;
+    }
 
-        if (isInBounds(clone) && !isOverlappingAnotherPiece(clone)) {
+    /**
+     * Locks the piece where it is, removes the rows it filled and spawns the next piece.
+     */
+    private void settle () {
+        int before = lines;
+        lock();
+        removeRow();
+        if (metrics != null) metrics.lock(lines - before);
+        createNewPiece();
+    }
+
+    /**
+     * Checks to see if any rows have been filled, if so, removes them all at once and
+     * moves the pieces above them down to fill the space. Only the rows of the piece
+     * that was just locked can have been filled. The lines are scored on the level
+     * they were cleared on, and may take the board up a level.
+     */
+    private void removeRow() {
+        int top = gameBoard.getTop();
+        int removed = gameBoard.removeFullRows(lockedBottom);
+        lastCleared = removed;
+        if (removed == 0) {
+            combo = -1;
+            return;
+        }
+
+        markRows(top, lockedBottom);
+        combo++;
+        score += scoring.lines(removed, level, combo);
+        lines += removed;
+        level = scoring.level(lines);
+    }
+
+    /**
+     * Move the piece that is dropping left one Square.
+     * @return  true if the piece was moved
+     */
+    boolean moveLeft () {
+        if (!gameOver && isValidPosition(piece.getRotation(), piece.getX() - 1, piece.getY())) {
+            markPiece();
             piece.moveLeft();
+            markPiece();
+            return true;
         }
+        return false;
     }
 
     /**
      * Move the piece that is dropping right one Square.
+     * @return  true if the piece was moved
      */
-    void moveRight () {
-        Piece clone = piece.clone();
-        clone.moveRight();
-
-        if (isInBounds(clone) && !isOverlappingAnotherPiece(clone)) {
+    boolean moveRight () {
+        if (!gameOver && isValidPosition(piece.getRotation(), piece.getX() + 1, piece.getY())) {
+            markPiece();
             piece.moveRight();
+            markPiece();
+            return true;
         }
+        return false;
     }
 
     /**
      * Rotates the piece that is dropping counter-clockwise.
+     * @return  true if the piece was moved
      */
-    void rotateCounterClockwise () {
-        Piece clone = piece.clone();
-        clone.rotateCounterClockwise();
-
-        if (isInBounds(clone) && !isOverlappingAnotherPiece(clone)) {
+    boolean rotateCounterClockwise () {
+        if (!gameOver && isValidPosition(piece.peekRotateCounterClockwise(), piece.getX(), piece.getY())) {
+            markPiece();
             piece.rotateCounterClockwise();
+            markPiece();
+            return true;
         }
+        return false;
     }
 
     /**
      * Rotates the piece that is dropping clockwise.
+     * @return  true if the piece was moved
      */
-    void rotateClockwise () {
-        Piece clone = piece.clone();
-        clone.rotateClockwise();
-
-        if (isInBounds(clone) && !isOverlappingAnotherPiece(clone)) {
+    boolean rotateClockwise () {
+        if (!gameOver && isValidPosition(piece.peekRotateClockwise(), piece.getX(), piece.getY())) {
+            markPiece();
             piece.rotateClockwise();
+            markPiece();
+            return true;
         }
+        return false;
     }
 
-    void paint (Graphics graphics) {
-
-        Graphics2D g = (Graphics2D) graphics;
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        paintBackground(g);
-        paintAllPieces(g);
-        paintActivePiece(g);
+    /**
+     * Marks the Squares that the dropping piece and its ghost, where it would land,
+     * cover as changed.
+     */
+    private void markPiece () {
+        if (sizeOfPiece == 0) return;
 
+        int size = piece.getRotation().getSize();
+        markDirty(piece.getY(), piece.getX(), getLandingY() + size - 1, piece.getX() + size - 1);
     }
 
-    private void paintBackground (Graphics2D graphics) {
-        for (int row = 0; row < ROWS; row++) {
-            for (int column = 0; column < COLUMNS; column++) {
-                if ((column + row) % 2 == 0) graphics.setColor(new Color(20, 20, 20));
-                else graphics.setColor(new Color(24, 24, 24));
-                graphics.fillRect(column * sizeOfPiece, row * sizeOfPiece, sizeOfPiece, sizeOfPiece);
-            }
-        }
+    /**
+     * Marks whole rows of settled squares as changed.
+     * @param top       the first row
+     * @param bottom    the last row
+     */
+    private void markRows (int top, int bottom) {
+        markDirty(top, 0, bottom, columns - 1);
     }
 
-    private void paintAllPieces (Graphics2D graphics) {
+    /**
+     * Adds a rectangle of Squares to the part of the board that has changed.
+     * Boards that are never painted do not keep track of it.
+     */
+    private void markDirty (int top, int left, int bottom, int right) {
+        if (sizeOfPiece == 0) return;
 
-        for (int row = 0; row < ROWS; row++) {
-            for (int column = 0; column < COLUMNS; column++) {
-                if (gameBoard[row][column] < 0) {
-                    paintPiece(graphics, row, column, pickHue(row, column));
-                }
-            }
-        }
+        dirtyTop = Math.min(dirtyTop, Math.max(top, 0));
+        dirtyBottom = Math.max(dirtyBottom, Math.min(bottom, rows - 1));
+        dirtyLeft = Math.min(dirtyLeft, Math.max(left, 0));
+        dirtyRight = Math.max(dirtyRight, Math.min(right, columns - 1));
     }
 
-    private void paintActivePiece (Graphics2D graphics) {
-
-        graphics.setColor(Color.WHITE);
-        int[][] array = piece.getArray();
-
-        for (int row = 0; row < array.length; row++) {
-            for (int column = 0; column < array[0].length; column++) {
-                if (array[row][column] == 1) {
-                    paintPiece(graphics, piece.getY() + row, piece.getX() + column,
-                            pickHueForActivePiece());
-                }
-            }
-        }
+    private void clearDirtyRegion () {
+        dirtyTop = rows;
+        dirtyBottom = -1;
+        dirtyLeft = columns;
+        dirtyRight = -1;
     }
 
-    private void paintPiece (Graphics2D graphics, int row, int column, float hue) {
+    /**
+     * Gets the part of the board that has changed since the last call, and starts
+     * tracking changes again from nothing.
+     * @return      the area that needs to be repainted in pixels, or null if nothing changed
+     */
+    Rectangle takeDirtyRegion () {
+        if (dirtyTop > dirtyBottom || dirtyLeft > dirtyRight) return null;
 
-        int padding = sizeOfPiece/6;
+        Rectangle region = new Rectangle(dirtyLeft * sizeOfPiece, dirtyTop * sizeOfPiece,
+                (dirtyRight - dirtyLeft + 1) * sizeOfPiece, (dirtyBottom - dirtyTop + 1) * sizeOfPiece);
+        clearDirtyRegion();
+        return region;
+    }
 
-        // Outer Square.
-        int x1 = (row * sizeOfPiece);
-        int x2 = (row * sizeOfPiece) + sizeOfPiece;
-        int y1 = (column * sizeOfPiece);
-        int y2 = (column * sizeOfPiece) + sizeOfPiece;
+    /**
+     * @return      the piece that is dropping, which must not be moved except through this
+     *              board. The same Piece is reused for every piece that is spawned, so
+     *              anything that is needed after the next lock must be read before it
+     */
+    Piece getPiece () {
+        return piece;
+    }
 
-        // Inner square.
-        int x3 = x1 + padding;
-        int x4 = x1 + (sizeOfPiece - padding);
-        int y3 = y1 + padding;
-        int y4 = y1 + (sizeOfPiece - padding);
+    /**
+     * The hash is kept up to date as pieces are locked and rows are removed.
+     * @return      the Zobrist hash of the settled squares, see Zobrist
+     */
+    long getBoardHash () {
+        return gameBoard.getHash();
+    }
 
-        // Left (bright)
-        graphics.setColor(Color.getHSBColor(hue,0.6f,1));
-        graphics.fillPolygon(new int[]{y1, y3, y3, y1}, new int[]{x1, x3, x4, x2}, 4);
+    /**
+     * Copies the masks of the settled squares.
+     * @param masks     receives the mask of each row, where bit c is set if column c is filled
+     */
+    void copyMasks (long[] masks) {
+        gameBoard.copyMasks(masks);
+    }
 
-        // Right (dark)
-        graphics.setColor(Color.getHSBColor(hue,1,0.6f));
-        graphics.fillPolygon(new int[]{y2, y4, y4, y2}, new int[]{x1, x3, x4, x2}, 4);
+    /**
+     * @param row   the row
+     * @return      the mask of the settled squares of the row, where bit c is set if column c is filled
+     */
+    long getMask (int row) {
+        return gameBoard.getMask(row);
+    }
 
-        // Top (brightest)
-        graphics.setColor(Color.getHSBColor(hue,0.4f,1));
-        graphics.fillPolygon(new int[]{y1, y3, y4, y2}, new int[]{x1, x3, x3, x1}, 4);
+    /**
+     * @param row       the row of the Square
+     * @param column    the column of the Square
+     * @return          the color of the settled Square, or 0 if it is empty
+     */
+    int getColor (int row, int column) {
+        return gameBoard.getColor(row, column);
+    }
 
-        // Bottom (darkest)
-        graphics.setColor(Color.getHSBColor(hue,1,0.2f));
-        graphics.fillPolygon(new int[]{y1, y3, y4, y2}, new int[]{x2, x4, x4, x2}, 4);
+    /**
+     * Puts the board into a state that was saved earlier, such as a keyframe of a
+     * replay. The settled squares must be set with restoreSquare() afterwards.
+     * @param shape     the shape of the dropping piece
+     * @param rotation  the rotation of the dropping piece
+     * @param x         the x coordinate of the dropping piece
+     * @param y         the y coordinate of the dropping piece
+     * @param held      the shape that was held, or null
+     * @param canHold   true if the dropping piece could be held
+     * @param taken     the number of pieces that had been taken from the preview
+     * @param score     the score
+     * @param lines     the number of rows that had been cleared
+     * @param combo     the combo, see getCombo()
+     * @param gameOver  true if the game was over
+     */
+    void restore (Piece.Shape shape, int rotation, int x, int y, Piece.Shape held, boolean canHold,
+                  long taken, int score, int lines, int combo, boolean gameOver) {
+        gameBoard.clear();
+        preview.restore(taken);
+        this.held = held;
+        this.canHold = canHold;
+
+        piece.reset(shape, x, y);
+        for (int i = 0; i < rotation; i++) piece.rotateClockwise();
+
+        this.score = score;
+        this.lines = lines;
+        this.level = scoring.level(lines);
+        this.combo = combo;
+        this.gameOver = gameOver;
+        markRows(0, rows - 1);
+    }
 
-        // Fill center.
-        graphics.setColor(Color.getHSBColor(hue,1,1));
-        graphics.fillPolygon(new int[]{y3, y3, y4, y4}, new int[]{x3, x4, x4, x3}, 4);
+    /**
+     * Fills a settled Square while a board is being restored.
+     * @param row       the row of the Square
+     * @param column    the column of the Square
+     * @param color     the color of the Square
+     */
+    void restoreSquare (int row, int column, int color) {
+        gameBoard.set(row, column, color);
+    }
 
+    /**
+     * Copies the settled squares, the dropping piece and the score into a snapshot.
+     * @param snapshot  the snapshot to fill, which must be the size of this board
+     */
+    void copyTo (Snapshot snapshot) {
+        copyTo(snapshot, 0, rows - 1);
     }
 
     /**
-     * This method can be merge with pickHueForActivePiece().
-     * @param row       the row of the piece
-     * @param column    the column of the piece
-     * @return          the hue based on the piece
+     * Copies the dropping piece, the score and some of the rows of settled squares
+     * into a snapshot, for a snapshot whose other rows are already up to date.
+     * @param snapshot  the snapshot to fill, which must be the size of this board
+     * @param top       the first row to copy
+     * @param bottom    the last row to copy
      */
-    private float pickHue (int row, int column) {
-        if      (gameBoard[row][column] == -1) return 0.0f;
-        else if (gameBoard[row][column] == -2) return 0.15f;
-        else if (gameBoard[row][column] == -3) return 0.30f;
-        else if (gameBoard[row][column] == -4) return 0.45f;
-        else if (gameBoard[row][column] == -5) return 0.60f;
-        else if (gameBoard[row][column] == -6) return 0.75f;
-        else if (gameBoard[row][column] == -7) return 0.90f;
-        return 0.0f;
+    void copyTo (Snapshot snapshot, int top, int bottom) {
+        gameBoard.copyTo(snapshot.masks, snapshot.colors, top, bottom);
+        snapshot.shape = piece.getShape();
+        snapshot.rotation = piece.getRotationIndex();
+        snapshot.x = piece.getX();
+        snapshot.y = piece.getY();
+        snapshot.ghostY = gameOver ? piece.getY() : getLandingY();
+        snapshot.held = held;
+        for (int i = 0; i < snapshot.next.length; i++) {
+            snapshot.next[i] = i < preview.getDepth() ? preview.peek(i) : null;
+        }
+        snapshot.score = score;
+        snapshot.lines = lines;
+        snapshot.level = level;
+        snapshot.gameOver = gameOver;
     }
 
     /**
-     * This method can be merge with pickHue().
-     * @return      the hue based on the piece
+     * Paints the board as it is now, see BoardPainter. This must be called on the
+     * thread that plays the game. Other threads should paint a Snapshot instead.
+     * @param graphics  what to paint on
      */
-    private float pickHueForActivePiece () {
-        if      (piece.getColor() == -1) return 0.0f;
-        else if (piece.getColor() == -2) return 0.15f;
-        else if (piece.getColor() == -3) return 0.30f;
-        else if (piece.getColor() == -4) return 0.45f;
-        else if (piece.getColor() == -5) return 0.60f;
-        else if (piece.getColor() == -6) return 0.75f;
-        else if (piece.getColor() == -7) return 0.90f;
-        return 0.0f;
+    void paint (Graphics graphics) {
+
+        if (painter == null) {
+            painter = new BoardPainter(rows, columns, sizeOfPiece);
+            snapshot = new Snapshot(rows, columns, preview.getDepth());
+        }
+
+        copyTo(snapshot);
+        painter.paint(graphics, snapshot);
+
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the clock of a game on its own thread.
+ * <br/>
+ * The loop has two fixed rates. Logic ticks advance the game, and render ticks
+ * ask for the display to be updated. The thread parks until whichever is due
+ * next, so it does not wake up when there is nothing to do.
+ * <br/>
+ * If the loop falls behind, for example because the machine was busy, it runs
+ * the missed logic ticks back to back, but never more than MAX_CATCH_UP of them.
+ * Beyond that the missed ticks are dropped rather than letting the game run in
+ * a burst. How late each logic tick starts is its jitter, which is recorded in
+ * the Metrics along with the dropped ticks when the loop is given them.
+ */
+class GameLoop implements Runnable {
+
+    /**
+     * The work done on each logic tick.
+     */
+    interface Logic {
+
+        /**
+         * Advances the game by one tick.
+         */
+        void tick ();
+
+    }
+
+    private static final int MAX_CATCH_UP = 5;
+
+    private final Logic logic;
+    private final Runnable render;
+    private final long tickPeriod;
+    private final long framePeriod;
+
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    private volatile long ticks = 0;
+    private Metrics metrics;    // Null if nothing is recorded.
+
+    /**
+     * Construct a loop. It does nothing until it is run.
+     * @param logic             the work of each logic tick
+     * @param render            the work of each render tick
+     * @param ticksPerSecond    the rate of the logic ticks
+     * @param framesPerSecond   the rate of the render ticks
+     */
+    GameLoop (Logic logic, Runnable render, int ticksPerSecond, int framesPerSecond) {
+        this.logic = logic;
+        this.render = render;
+        this.tickPeriod = 1_000_000_000L / ticksPerSecond;
+        this.framePeriod = 1_000_000_000L / framesPerSecond;
+    }
+
+    /**
+     * Makes the loop record the jitter of every logic tick and the ticks it drops.
+     * Must be called before the loop is started.
+     * @param metrics   the metrics to record into
+     */
+    void setMetrics (Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts the loop on a new thread.
+     * @return      the thread of the loop
+     */
+    Thread start () {
+        Thread thread = new Thread(this, "Game Loop");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stops the loop after the current tick.
+     */
+    void stop () {
+        running = false;
+        Thread thread = this.thread;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run () {
+
+        thread = Thread.currentThread();
+
+        long nextTick = System.nanoTime();
+        long nextFrame = nextTick;
+
+        while (running) {
+
+            long now = System.nanoTime();
+
+            if (now - nextTick >= 0) {
+                long late = now - nextTick;
+
+                if (late >= MAX_CATCH_UP * tickPeriod) {
+                    long missed = late / tickPeriod;
+                    if (metrics != null) metrics.skippedTicks(missed);
+                    nextTick += missed * tickPeriod;
+                    late -= missed * tickPeriod;
+                }
+
+                ticks++;
+                if (metrics != null) metrics.jitter(late);
+                logic.tick();
+                nextTick += tickPeriod;
+                continue;
+            }
+
+            if (now - nextFrame >= 0) {
+                render.run();
+                nextFrame += framePeriod;
+
+                // Frames are never caught up, the next one shows the latest state anyway.
+                if (now - nextFrame >= 0) nextFrame = now + framePeriod;
+                continue;
+            }
+
+            long wait = Math.min(nextTick - now, nextFrame - now);
+            LockSupport.parkNanos(this, wait);
+        }
+
+    }
+
+    /**
+     * @return      the number of logic ticks that have run
+     */
+    long getTicks () {
+        return ticks;
+    }
+
+}
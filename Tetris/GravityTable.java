@@ -0,0 +1,101 @@
+/**
+ * How fast the pieces fall on each level, in rows per tick.
+ * <br/>
+ * The speeds are fixed point numbers with ONE_ROW as one row, so they can be added
+ * up tick after tick with integers only, and every game that is played at the same
+ * speeds falls on exactly the same ticks on any thread or machine. A speed of more
+ * than one row per tick makes the piece fall several rows each tick, up to 20 rows
+ * a tick (20G), where a piece reaches the stack of a normal board as soon as it
+ * spawns. The speeds are only worked out when a table is built.
+ */
+final class GravityTable {
+
+    /**
+     * The bits of a speed that hold the fraction of a row.
+     */
+    static final int FRACTION_BITS = 16;
+
+    /**
+     * A speed of one row per tick.
+     */
+    static final long ONE_ROW = 1L << FRACTION_BITS;
+
+    /**
+     * The fastest speed, 20 rows per tick.
+     */
+    static final long MAX = 20 * ONE_ROW;
+
+    private static final int GUIDELINE_LEVELS = 20;
+
+    private final long[] speeds;    // The speed of level i + 1, and of every level after the last.
+
+    private GravityTable (long[] speeds) {
+        this.speeds = speeds;
+    }
+
+    /**
+     * Builds the table of the guideline games, where a piece falls a row every
+     * (0.8 - (level - 1) * 0.007) ^ (level - 1) seconds. That is one row a second on
+     * level 1 and 20G from level 20 on.
+     * @param ticksPerSecond    the rate of the ticks the speeds are added up on
+     * @return                  the table
+     */
+    static GravityTable guideline (int ticksPerSecond) {
+        long[] speeds = new long[GUIDELINE_LEVELS];
+        for (int level = 1; level <= GUIDELINE_LEVELS; level++) {
+            // StrictMath gives the same result on every machine.
+            double secondsPerRow = StrictMath.pow(0.8 - (level - 1) * 0.007, level - 1);
+            speeds[level - 1] = toFixed(1 / (secondsPerRow * ticksPerSecond));
+        }
+        speeds[GUIDELINE_LEVELS - 1] = MAX;
+        return new GravityTable(speeds);
+    }
+
+    /**
+     * Builds a table with the same speed on every level.
+     * @param rowsPerSecond     the number of rows a piece falls each second
+     * @param ticksPerSecond    the rate of the ticks the speed is added up on
+     * @return                  the table
+     */
+    static GravityTable constant (double rowsPerSecond, int ticksPerSecond) {
+        return new GravityTable(new long[] {toFixed(rowsPerSecond / ticksPerSecond)});
+    }
+
+    /**
+     * Builds a table from its speeds, such as those of a table that was saved.
+     * @param speeds    the speed of each level from level 1 in fixed point, the last
+     *                  of which is kept for every level after it
+     * @return          the table
+     */
+    static GravityTable of (long... speeds) {
+        if (speeds.length == 0) throw new IllegalArgumentException("A table needs at least one speed");
+        for (long speed : speeds) {
+            if (speed < 0 || speed > MAX) throw new IllegalArgumentException("Speed out of range: " + speed);
+        }
+        return new GravityTable(speeds.clone());
+    }
+
+    /**
+     * @param rowsPerTick   a speed as a floating point number
+     * @return              the speed in fixed point, rounded, and at most MAX
+     */
+    static long toFixed (double rowsPerTick) {
+        return Math.min(MAX, Math.max(0, Math.round(rowsPerTick * ONE_ROW)));
+    }
+
+    /**
+     * @param level     the level, starting at 1
+     * @return          the speed of the level in fixed point rows per tick
+     */
+    long getRowsPerTick (int level) {
+        return speeds[Math.max(0, Math.min(level, speeds.length) - 1)];
+    }
+
+    /**
+     * @return      the number of levels in the table, after which the speed no longer changes
+     */
+    int getLevels () {
+        return speeds.length;
+    }
+
+}
@@ -0,0 +1,104 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often values of each size were recorded, such as the durations of
+ * ticks in nanoseconds.
+ * <br/>
+ * The buckets are fixed, in the way of an HdrHistogram: the values below 16 each
+ * have their own bucket, and every power of two above that is split into eight
+ * buckets of equal width. A value is therefore always within an eighth of the
+ * lower bound of its bucket, and every long fits in 488 buckets. Recording a value
+ * finds its bucket with a few shifts and adds one to it, and never allocates or
+ * takes a lock, so it can be done from any thread while the game is running.
+ */
+final class Histogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (Long.SIZE - 1 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Adds a value. Negative values are counted as 0.
+     * @param value     the value
+     */
+    void record (long value) {
+        if (value < 0) value = 0;
+        counts.getAndIncrement(bucket(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Forgets every value.
+     */
+    void reset () {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * @return      the number of values recorded
+     */
+    long getCount () {
+        return count.sum();
+    }
+
+    /**
+     * @return      the mean of the values, or 0 if there are none
+     */
+    double getMean () {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    /**
+     * @return      the largest value, or 0 if there are none
+     */
+    long getMax () {
+        return max.get();
+    }
+
+    /**
+     * @param percentile    the percentile, from 0 to 100
+     * @return              the lower bound of the bucket that holds the value at that
+     *                      percentile, or 0 if there are no values
+     */
+    long getValueAtPercentile (double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return lowerBound(i);
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+
+    private static int bucket (long value) {
+        if (value < LINEAR) return (int) value;
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - 3)) & (SUB_BUCKETS - 1);
+        return LINEAR + (magnitude - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound (int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int magnitude = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (magnitude - 3);
+    }
+
+}
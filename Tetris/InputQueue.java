@@ -0,0 +1,110 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Carries player inputs from any thread to the game thread.
+ * <br/>
+ * The queue is a fixed ring of slots, where each slot has a sequence number that
+ * says whose turn it is to use it. A producer claims a slot by moving the tail on
+ * with a compare-and-set, writes the input into it, and then publishes it by moving
+ * the sequence of the slot on. The one consumer reads slots in order until it finds
+ * one that has not been published yet. No locks are taken and nothing is allocated,
+ * so the key listener never blocks on the game thread, and the game thread is the
+ * only thread that changes the board.
+ */
+final class InputQueue {
+
+    /**
+     * Receives the inputs taken from the queue.
+     */
+    interface Consumer {
+
+        /**
+         * @param input         the input
+         * @param offeredAt     the value of System.nanoTime() when the input was offered
+         */
+        void accept (Simulator.Input input, long offeredAt);
+
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Simulator.Input[] inputs;
+    private final long[] offeredAt;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // Only used by the consumer.
+
+    /**
+     * Construct an empty queue.
+     * @param capacity      the most inputs the queue can hold, rounded up to a power of two
+     */
+    InputQueue (int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        inputs = new Simulator.Input[size];
+        offeredAt = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an input to the queue. Can be called from any thread.
+     * @param input     the input
+     * @return          false if the queue was full and the input was dropped
+     */
+    boolean offer (Simulator.Input input) {
+        long position = tail.get();
+
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+
+        int slot = (int) position & mask;
+        inputs[slot] = input;
+        offeredAt[slot] = System.nanoTime();
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Takes inputs from the queue in the order they were offered. Must only be
+     * called from the game thread.
+     * @param consumer  what to give the inputs to
+     * @param max       the most inputs to take
+     * @return          the number of inputs taken
+     */
+    int drain (Consumer consumer, int max) {
+        int taken = 0;
+
+        while (taken < max) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) break;
+
+            Simulator.Input input = inputs[slot];
+            long time = offeredAt[slot];
+            inputs[slot] = null;
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            taken++;
+
+            consumer.accept(input, time);
+        }
+
+        return taken;
+    }
+
+}
@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the game is doing: how long ticks and frames take, how late ticks
+ * start and how many the loop drops, how long an input waits before it is applied, how many pieces are spawned and how many lines
+ * each lock clears, and how many bytes the game thread allocates per tick.
+ * <br/>
+ * There is one set of metrics for the whole program, which only the boards that are
+ * given it record into, see GameBoard.setMetrics(), so games run without a display
+ * do not pay for them. Every counter is a LongAdder and every duration goes into a
+ * Histogram, so recording never allocates or takes a lock, and boards on many
+ * threads can record at once. The bytes a thread allocates are only counted once
+ * countAllocations() is called, as counting them slows down every thread. The
+ * metrics can be read over JMX once registered, and can be written to a CSV file
+ * every few seconds.
+ */
+final class Metrics implements MetricsMXBean {
+
+    private static final Metrics METRICS = new Metrics();
+    private static final int LINE_BUCKETS = 5;
+
+    private final Histogram ticks = new Histogram();
+    private final Histogram jitter = new Histogram();
+    private final LongAdder skippedTicks = new LongAdder();
+    private final Histogram renders = new Histogram();
+    private final Histogram inputs = new Histogram();
+    private final Histogram allocations = new Histogram();
+    private final LongAdder piecesSpawned = new LongAdder();
+    private final LongAdder linesCleared = new LongAdder();
+    private final LongAdder[] locks = new LongAdder[LINE_BUCKETS];
+
+    // Null if the JVM cannot count the bytes a thread allocates.
+    private final com.sun.management.ThreadMXBean threads;
+    private volatile boolean counting = false;
+
+    private Metrics () {
+        for (int i = 0; i < LINE_BUCKETS; i++) locks[i] = new LongAdder();
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * @return      the metrics of the program
+     */
+    static Metrics get () {
+        return METRICS;
+    }
+
+    /**
+     * Makes the metrics readable over JMX as Tetris:type=Metrics. Does nothing if
+     * they already are.
+     */
+    void register () {
+        try {
+            ObjectName name = new ObjectName("Tetris:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Could not register the metrics", ex);
+        }
+    }
+
+    /**
+     * Makes the JVM count the bytes each thread allocates, so that ticks record how
+     * many bytes they allocated. Does nothing if the JVM cannot count them.
+     */
+    void countAllocations () {
+        if (threads == null) return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        counting = true;
+    }
+
+    /**
+     * @return      the number of bytes the current thread has allocated, or 0 if
+     *              that is not counted
+     */
+    long allocatedBytes () {
+        return counting ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * @param nanos     how long a logic tick took
+     * @param bytes     the number of bytes allocated during the tick
+     */
+    void tick (long nanos, long bytes) {
+        ticks.record(nanos);
+        if (counting) allocations.record(bytes);
+    }
+
+    /**
+     * @param nanos     how late a logic tick started
+     */
+    void jitter (long nanos) {
+        jitter.record(nanos);
+    }
+
+    /**
+     * @param count     the number of logic ticks the loop dropped because it fell behind
+     */
+    void skippedTicks (long count) {
+        skippedTicks.add(count);
+    }
+
+    /**
+     * @param nanos     how long painting a frame took
+     */
+    void render (long nanos) {
+        renders.record(nanos);
+    }
+
+    /**
+     * @param nanos     how long an input waited between being offered and being applied
+     */
+    void input (long nanos) {
+        inputs.record(nanos);
+    }
+
+    void pieceSpawned () {
+        piecesSpawned.increment();
+    }
+
+    /**
+     * @param lines     the number of lines the lock cleared
+     */
+    void lock (int lines) {
+        locks[Math.min(lines, LINE_BUCKETS - 1)].increment();
+        if (lines > 0) linesCleared.add(lines);
+    }
+
+    @Override
+    public long getTicks () {
+        return ticks.getCount();
+    }
+
+    @Override
+    public double getTickMeanNanos () {
+        return ticks.getMean();
+    }
+
+    @Override
+    public long getTick99thPercentileNanos () {
+        return ticks.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getTickMaxNanos () {
+        return ticks.getMax();
+    }
+
+    @Override
+    public double getTickJitterMeanNanos () {
+        return jitter.getMean();
+    }
+
+    @Override
+    public long getTickJitter99thPercentileNanos () {
+        return jitter.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getTickJitterMaxNanos () {
+        return jitter.getMax();
+    }
+
+    @Override
+    public long getSkippedTicks () {
+        return skippedTicks.sum();
+    }
+
+    @Override
+    public long getFrames () {
+        return renders.getCount();
+    }
+
+    @Override
+    public double getRenderMeanNanos () {
+        return renders.getMean();
+    }
+
+    @Override
+    public long getRender99thPercentileNanos () {
+        return renders.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getRenderMaxNanos () {
+        return renders.getMax();
+    }
+
+    @Override
+    public long getInputs () {
+        return inputs.getCount();
+    }
+
+    @Override
+    public double getInputLatencyMeanNanos () {
+        return inputs.getMean();
+    }
+
+    @Override
+    public long getInputLatency99thPercentileNanos () {
+        return inputs.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getInputLatencyMaxNanos () {
+        return inputs.getMax();
+    }
+
+    @Override
+    public long getPiecesSpawned () {
+        return piecesSpawned.sum();
+    }
+
+    @Override
+    public long getLocks () {
+        long sum = 0;
+        for (LongAdder lock : locks) sum += lock.sum();
+        return sum;
+    }
+
+    @Override
+    public long getLinesCleared () {
+        return linesCleared.sum();
+    }
+
+    @Override
+    public long[] getLocksByLinesCleared () {
+        long[] counts = new long[LINE_BUCKETS];
+        for (int i = 0; i < LINE_BUCKETS; i++) counts[i] = locks[i].sum();
+        return counts;
+    }
+
+    @Override
+    public double getAllocatedBytesPerTickMean () {
+        return allocations.getMean();
+    }
+
+    @Override
+    public long getAllocatedBytesPerTickMax () {
+        return allocations.getMax();
+    }
+
+    @Override
+    public void reset () {
+        ticks.reset();
+        jitter.reset();
+        skippedTicks.reset();
+        renders.reset();
+        inputs.reset();
+        allocations.reset();
+        piecesSpawned.reset();
+        linesCleared.reset();
+        for (LongAdder lock : locks) lock.reset();
+    }
+
+    /**
+     * @return      the names of the columns of the CSV rows
+     */
+    static String csvHeader () {
+        return "time,ticks,tick_mean_ns,tick_p99_ns,tick_max_ns,jitter_mean_ns,jitter_p99_ns,jitter_max_ns,"
+                + "skipped_ticks,frames,render_mean_ns,render_p99_ns,render_max_ns,inputs,input_mean_ns,input_p99_ns,input_max_ns,pieces,locks,lines,"
+                + "alloc_mean_bytes,alloc_max_bytes";
+    }
+
+    /**
+     * @return      the metrics as a CSV row, with the totals since they were last reset
+     */
+    String toCsv () {
+        return String.format("%d,%d,%.0f,%d,%d,%.0f,%d,%d,%d,%d,%.0f,%d,%d,%d,%.0f,%d,%d,%d,%d,%d,%.0f,%d",
+                System.currentTimeMillis(),
+                getTicks(), getTickMeanNanos(), getTick99thPercentileNanos(), getTickMaxNanos(),
+                getTickJitterMeanNanos(), getTickJitter99thPercentileNanos(), getTickJitterMaxNanos(),
+                getSkippedTicks(),
+                getFrames(), getRenderMeanNanos(), getRender99thPercentileNanos(), getRenderMaxNanos(),
+                getInputs(), getInputLatencyMeanNanos(), getInputLatency99thPercentileNanos(),
+                getInputLatencyMaxNanos(), getPiecesSpawned(), getLocks(), getLinesCleared(),
+                getAllocatedBytesPerTickMean(), getAllocatedBytesPerTickMax());
+    }
+
+    /**
+     * Writes a CSV row of the metrics to a file at a fixed rate on a daemon thread,
+     * after a header row. If the file cannot be written, the error is printed once
+     * and writing stops. The file is closed when the scheduler is shut down, or
+     * when the program exits.
+     * @param path          the file, which is replaced if it exists
+     * @param period        the time between rows
+     * @param unit          the unit of the period
+     * @return              the scheduler, which can be shut down to stop writing
+     * @throws IOException  if the file cannot be opened
+     */
+    ScheduledExecutorService dump (Path path, long period, TimeUnit unit) throws IOException {
+        CsvFile file = new CsvFile(path);
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Metrics");
+            thread.setDaemon(true);
+            return thread;
+        }) {
+            @Override
+            protected void terminated () {
+                file.close();
+            }
+        };
+        scheduler.scheduleAtFixedRate(() -> {
+            if (!file.write(toCsv())) scheduler.shutdown();
+        }, period, period, unit);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdown();
+            file.close();
+        }, "Metrics Shutdown"));
+        return scheduler;
+    }
+
+    /**
+     * The file the CSV rows are written to, which can be closed from any thread.
+     */
+    private static final class CsvFile {
+
+        private final Path path;
+        private final Writer writer;
+        private boolean closed = false;
+
+        CsvFile (Path path) throws IOException {
+            this.path = path;
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            writer.write(csvHeader());
+            writer.write('\n');
+            writer.flush();
+        }
+
+        /**
+         * @param row   the row to write, without a line break
+         * @return      false if the file is closed, or the row could not be written
+         */
+        synchronized boolean write (String row) {
+            if (closed) return false;
+            try {
+                writer.write(row);
+                writer.write('\n');
+                writer.flush();
+                return true;
+            } catch (IOException ex) {
+                System.err.println("Could not write the metrics to " + path + ": " + ex.getMessage());
+                close();
+                return false;
+            }
+        }
+
+        synchronized void close () {
+            if (closed) return;
+            closed = true;
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                // The rows that were written have already been flushed.
+            }
+        }
+
+    }
+
+}
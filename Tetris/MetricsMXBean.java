@@ -0,0 +1,65 @@
+/**
+ * The metrics of the game as JMX attributes, for tools such as JConsole. Durations
+ * are in nanoseconds.
+ */
+public interface MetricsMXBean {
+
+    long getTicks ();
+
+    double getTickMeanNanos ();
+
+    long getTick99thPercentileNanos ();
+
+    long getTickMaxNanos ();
+
+    /**
+     * @return      how late the logic ticks started after the time they were due, on average
+     */
+    double getTickJitterMeanNanos ();
+
+    long getTickJitter99thPercentileNanos ();
+
+    long getTickJitterMaxNanos ();
+
+    /**
+     * @return      the number of logic ticks the loop dropped because it fell too far behind
+     */
+    long getSkippedTicks ();
+
+    long getFrames ();
+
+    double getRenderMeanNanos ();
+
+    long getRender99thPercentileNanos ();
+
+    long getRenderMaxNanos ();
+
+    long getInputs ();
+
+    double getInputLatencyMeanNanos ();
+
+    long getInputLatency99thPercentileNanos ();
+
+    long getInputLatencyMaxNanos ();
+
+    long getPiecesSpawned ();
+
+    long getLocks ();
+
+    long getLinesCleared ();
+
+    /**
+     * @return      the number of locks that cleared 0, 1, 2, 3 and 4 or more lines
+     */
+    long[] getLocksByLinesCleared ();
+
+    double getAllocatedBytesPerTickMean ();
+
+    long getAllocatedBytesPerTickMax ();
+
+    /**
+     * Forgets everything that has been recorded.
+     */
+    void reset ();
+
+}
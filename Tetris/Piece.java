@@ -1,277 +1,336 @@
-import java.util.Random;
+import java.util.Arrays;
 
 /**
  * Represents a Tetris piece. Each Tetris piece has a shape, as there are different
- * kinds of pieces. The shape is selected randomly when constructed.
+ * kinds of pieces. The shape is dealt by the PieceGenerator of the board.
+ * <br/>
+ * Every rotation of every shape is worked out once, when the Shape enum is loaded.
+ * Rotating a piece only changes which of those rotations it points at, so nothing
+ * is built or allocated when a piece is rotated.
  */
 class Piece {
 
     private Shape shape; // The shape of the piece.
-    private int[][] array; // Stores the shape.
+    private int rotation; // Index into the rotations of the shape.
     private int x, y;
-    private int color; // Color is an int as I want to pick the colors outside this class.
 
     /**
-     * Construct a random piece at the specified coordinate.
-     * @param x     the x coordinate
-     * @param y     the y coordinate
+     * Construct a piece at the specified coordinate.
+     * @param shape     the shape of the piece
+     * @param x         the x coordinate
+     * @param y         the y coordinate
      */
-    Piece (int x, int y) {
-        shape = getRandomShape();
+    Piece (Shape shape, int x, int y) {
+        this.shape = shape;
+        rotation = 0;
         this.x = x;
         this.y = y;
-        createPiece();
     }
 
     /**
-     * Get a random type of piece.
-     * @return      a random shape
+     * Puts the piece at a coordinate with a new shape in its first rotation, so that
+     * a board can drop every piece of a game with one Piece and spawn without
+     * allocating.
+     * @param shape     the new shape of the piece
+     * @param x         the x coordinate
+     * @param y         the y coordinate
      */
-    private Shape getRandomShape () {
-        int random = new Random().nextInt(Shape.values().length);
-        return Shape.values()[random];
+    void reset (Shape shape, int x, int y) {
+        this.shape = shape;
+        rotation = 0;
+        this.x = x;
+        this.y = y;
     }
 
     /**
-     * Create the piece in the array.
+     * Rotates the piece counter-clockwise.
      */
-    private void createPiece () {
-
-        if (shape == Shape.Tower)                 createTower();
-        else if (shape == Shape.Square)           createSquare();
-        else if (shape == Shape.LightningRight)   createLightningRight();
-        else if (shape == Shape.LightningLeft)    createLightningLeft();
-        else if (shape == Shape.HammerLeft)       createHammerLeft();
-        else if (shape == Shape.HammerRight)      createHammerRight();
-        else if (shape == Shape.Hat)              createHat();
-
+    void rotateCounterClockwise () {
+        rotation = shape.previous(rotation);
     }
 
-    private void createTower() {
-
-        array = new int[][]{
-                { 0, 1, 0, 0 },
-                { 0, 1, 0, 0 },
-                { 0, 1, 0, 0 },
-                { 0, 1, 0, 0 }
-        };
-
-        color = -1;
-
+    /**
+     * Rotates the piece clockwise.
+     */
+    void rotateClockwise () {
+        rotation = shape.next(rotation);
     }
 
-    private void createSquare() {
-
-        array = new int[][]{
-                { 1, 1 },
-                { 1, 1 }
-        };
-
-        color = -2;
-
+    /**
+     * @return      the rotation the piece would have after rotating counter-clockwise
+     */
+    Rotation peekRotateCounterClockwise () {
+        return shape.getRotation(shape.previous(rotation));
     }
 
-    private void createLightningLeft() {
-
-        array = new int[][]{
-                { 0, 0, 1 },
-                { 0, 1, 1 },
-                { 0, 1, 0 }
-        };
-
-        color = -3;
-
+    /**
+     * @return      the rotation the piece would have after rotating clockwise
+     */
+    Rotation peekRotateClockwise () {
+        return shape.getRotation(shape.next(rotation));
     }
 
-    private void createLightningRight() {
-
-        array = new int[][]{
-                { 1, 0, 0 },
-                { 1, 1, 0 },
-                { 0, 1, 0 }
-        };
-
-        color = -4;
-
+    Shape getShape () {
+        return shape;
     }
 
-    private void createHammerLeft() {
-
-        array = new int[][]{
-                { 1, 1, 0 },
-                { 0, 1, 0 },
-                { 0, 1, 0 }
-        };
-
-        color = -5;
+    int getRotationIndex () {
+        return rotation;
+    }
 
+    Rotation getRotation () {
+        return shape.getRotation(rotation);
     }
 
-    private void createHammerRight() {
+    int getX () {
+        return x;
+    }
 
-        array = new int[][]{
-                { 0, 1, 1 },
-                { 0, 1, 0 },
-                { 0, 1, 0 }
-        };
+    int getY () {
+        return y;
+    }
 
-        color = -6;
+    int getColor () {
+        return shape.getColor();
+    }
 
+    void moveDown () {
+        y++;
     }
 
-    private void createHat() {
+    /**
+     * Moves the piece down by a number of Squares at once.
+     * @param rows  the number of Squares
+     */
+    void moveDown (int rows) {
+        y += rows;
+    }
 
-        array = new int[][]{
-                { 1, 0, 0 },
-                { 1, 1, 0 },
-                { 1, 0, 0 }
-        };
+    void moveLeft () {
+        x--;
+    }
 
-        color = -7;
+    void moveRight () {
+        x++;
+    }
 
+    public String toString () {
+        return getRotation().toString();
     }
 
     /**
-     * Decides which method to use to rotate the piece counter-clockwise.
+     * One rotation of a shape. The squares are stored both as a list of
+     * (column, row) offsets from the top left corner of the piece, for painting
+     * and locking, and as one bitmask per row, for collision checks against a
+     * BitBoard. Instances are never modified after they are built.
      */
-    void rotateCounterClockwise () {
-        if (shape == Shape.Square) { // Rotation does not affect Square.
-            return;
-        } else if (shape == Shape.Tower) { // Tower rotates in its own special way.
-            doRotateTower();
-        } else {
-            doRotateCounterClockwise();
+    static final class Rotation {
+
+        private final int size;
+        private final int[] cells;
+        private final long[] masks;
+        private final int[] bottoms;    // The lowest row of each column, or -1 if it is empty.
+
+        /**
+         * Construct a rotation from a square array, where 1 marks a Square.
+         * @param array     the rotation as an array
+         */
+        private Rotation (int[][] array) {
+            size = array.length;
+            masks = new long[size];
+            bottoms = new int[size];
+            Arrays.fill(bottoms, -1);
+
+            int squares = 0;
+            for (int[] row : array) {
+                for (int square : row) squares += square;
+            }
+            cells = new int[squares * 2];
+
+            int cell = 0;
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < size; column++) {
+                    if (array[row][column] == 1) {
+                        cells[cell++] = column;
+                        cells[cell++] = row;
+                        masks[row] |= 1L << column;
+                        bottoms[column] = row;
+                    }
+                }
+            }
         }
-    }
 
-    /**
-     * Decides which method to use to rotate the piece clockwise.
-     */
-    void rotateClockwise () {
-        if (shape == Shape.Square) { // Rotation does not affect Square.
-            return;
-        } else if (shape == Shape.Tower) { // Tower rotates in its own special way.
-            doRotateTower();
-        } else {
-            doRotateClockwise();
+        /**
+         * @return      the width and height of the rotation, in Squares
+         */
+        int getSize () {
+            return size;
         }
-    }
 
-    /**
-     * Rotates the piece counter-clockwise.
-     */
-    private void doRotateCounterClockwise () {
-        int[][] newArray = new int[3][3];
+        /**
+         * @return      the number of squares in the rotation
+         */
+        int getSquares () {
+            return cells.length / 2;
+        }
 
-        for (int x = 0; x < array.length; x++) {
-            for (int y = 0; y < array[0].length; y++) {
-                if (array[y][x] == 1) {
-                    newArray[array.length - 1 - x][y] = 1;
-                }
-            }
+        /**
+         * @param square    the index of a Square
+         * @return          the column of the Square, relative to the piece
+         */
+        int getColumn (int square) {
+            return cells[square * 2];
         }
 
-        array = newArray;
-    }
+        /**
+         * @param square    the index of a Square
+         * @return          the row of the Square, relative to the piece
+         */
+        int getRow (int square) {
+            return cells[square * 2 + 1];
+        }
 
-    /**
-     * Rotates the piece clockwise.
-     */
-    private void doRotateClockwise () {
+        /**
+         * @param column    a column of the piece, from 0 to the size of the rotation
+         * @return          the row of the lowest Square in the column, relative to the
+         *                  piece, or -1 if the column has no Square
+         */
+        int getBottom (int column) {
+            return bottoms[column];
+        }
+
+        /**
+         * The masks must not be modified.
+         * @return      one mask per row of the piece, where bit c is set if column c is filled
+         */
+        long[] getMasks () {
+            return masks;
+        }
 
-        int[][] newArray = new int[3][3];
+        public String toString () {
+            StringBuilder sb = new StringBuilder();
 
-        for (int x = 0; x < array.length; x++) {
-            for (int y = 0; y < array[0].length; y++) {
-                if (array[y][x] == 1) {
-                    newArray[array.length - 1 - x][y] = 1;
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < size; column++) {
+                    sb.append((masks[row] >>> column) & 1).append(" ");
                 }
+                sb.append("\n");
             }
+
+            return new String(sb);
         }
 
-        array = newArray;
     }
 
-    /**
-     * The tower is rotated differently than all the other pieces.
-     * It only has two position. If it is rotated like the other pieces
-     * then it may switch between column 2 and 3 when it is rotated to
-     * the vertical. This looks strange.
-     */
-    private void doRotateTower () {
-
-        if (array[0][1] == 1) {
+    enum Shape {
+
+        Tower(-1,
+                new int[][]{
+                        { 0, 1, 0, 0 },
+                        { 0, 1, 0, 0 },
+                        { 0, 1, 0, 0 },
+                        { 0, 1, 0, 0 }
+                },
+                // The tower only has two positions. If it is rotated like the other
+                // pieces then it may switch between column 2 and 3 when it is rotated
+                // to the vertical. This looks strange.
+                new int[][]{
+                        { 0, 0, 0, 0 },
+                        { 1, 1, 1, 1 },
+                        { 0, 0, 0, 0 },
+                        { 0, 0, 0, 0 }
+                }),
+
+        // Rotation does not affect Square.
+        Square(-2,
+                new int[][]{
+                        { 1, 1 },
+                        { 1, 1 }
+                }),
+
+        LightningLeft(-3, rotations(new int[][]{
+                { 0, 0, 1 },
+                { 0, 1, 1 },
+                { 0, 1, 0 }
+        })),
 
-            array = new int[][]{
-                    { 0, 0, 0, 0 },
-                    { 1, 1, 1, 1 },
-                    { 0, 0, 0, 0 },
-                    { 0, 0, 0, 0 }
-            };
+        LightningRight(-4, rotations(new int[][]{
+                { 1, 0, 0 },
+                { 1, 1, 0 },
+                { 0, 1, 0 }
+        })),
 
-        }
-        else createTower();
-    }
+        HammerLeft(-5, rotations(new int[][]{
+                { 1, 1, 0 },
+                { 0, 1, 0 },
+                { 0, 1, 0 }
+        })),
 
-    int getX () {
-        return x;
-    }
+        HammerRight(-6, rotations(new int[][]{
+                { 0, 1, 1 },
+                { 0, 1, 0 },
+                { 0, 1, 0 }
+        })),
 
-    int getY () {
-        return y;
-    }
+        Hat(-7, rotations(new int[][]{
+                { 1, 0, 0 },
+                { 1, 1, 0 },
+                { 1, 0, 0 }
+        }));
 
-    int getColor () {
-        return color;
-    }
+        private final int color; // Color is an int as I want to pick the colors outside this class.
+        private final Rotation[] rotations; // In clockwise order.
 
-    void moveDown () {
-        y++;
-    }
+        Shape (int color, int[][]... arrays) {
+            this.color = color;
+            this.rotations = new Rotation[arrays.length];
+            for (int i = 0; i < arrays.length; i++) {
+                rotations[i] = new Rotation(arrays[i]);
+            }
+        }
 
-    void moveLeft () {
-        x--;
-    }
+        /**
+         * Works out the four clockwise rotations of a shape.
+         * @param array     the shape in its starting position
+         * @return          the shape in each of its four positions
+         */
+        private static int[][][] rotations (int[][] array) {
+            int size = array.length;
+            int[][][] arrays = new int[4][][];
+            arrays[0] = array;
+
+            for (int i = 1; i < 4; i++) {
+                arrays[i] = new int[size][size];
+                for (int row = 0; row < size; row++) {
+                    for (int column = 0; column < size; column++) {
+                        arrays[i][column][size - 1 - row] = arrays[i - 1][row][column];
+                    }
+                }
+            }
 
-    void moveRight () {
-        x++;
-    }
+            return arrays;
+        }
 
-    public Piece clone () {
-        Piece piece = new Piece(x, y);
-        piece.shape = this.shape;
-        piece.array = this.array.clone();
-        piece.x = this.x;
-        piece.y = this.y;
-        piece.color = this.color;
-        return piece;
-    }
+        int getColor () {
+            return color;
+        }
 
-    int[][] getArray () {
-        return array.clone();
-    }
+        int getRotations () {
+            return rotations.length;
+        }
 
-    public String toString () {
-        StringBuilder sb = new StringBuilder();
+        Rotation getRotation (int index) {
+            return rotations[index];
+        }
 
-        for (int x = 0; x < array.length; x++) {
-            for (int y = 0; y < array.length; y++) {
-                sb.append(array[x][y] + " ");
-            }
-            sb.append("\n");
+        private int next (int rotation) {
+            return (rotation + 1) % rotations.length;
         }
 
-        return new String(sb);
-    }
+        private int previous (int rotation) {
+            return (rotation + rotations.length - 1) % rotations.length;
+        }
 
-    private enum Shape {
-        Tower,
-        Square,
-        LightningLeft,
-        LightningRight,
-        HammerLeft,
-        HammerRight,
-        Hat
     }
 
 }
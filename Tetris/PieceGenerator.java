@@ -0,0 +1,177 @@
+import java.util.SplittableRandom;
+
+/**
+ * Deals the shapes of the pieces of one game.
+ * <br/>
+ * A generator is built from a seed, and two generators of the same mode and seed
+ * always deal the same shapes in the same order. Each GameBoard owns its own
+ * generator, so boards on different threads never share one. Dealing a shape
+ * allocates nothing.
+ */
+abstract class PieceGenerator {
+
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+
+    /**
+     * The ways the shapes can be dealt.
+     */
+    enum Mode {
+        UNIFORM,    // Every shape is picked at random, independent of the last.
+        BAG;        // Every run of seven pieces holds each shape once, in a random order.
+
+        /**
+         * @param seed      the seed of the sequence
+         * @return          a new generator of this mode
+         */
+        PieceGenerator create (long seed) {
+            return this == UNIFORM ? new Uniform(seed) : new Bag(seed);
+        }
+    }
+
+    private final long seed;
+    SplittableRandom random;
+    private long dealt = 0;
+
+    private PieceGenerator (long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @param seed      the seed of the sequence
+     * @return          a generator that picks every shape at random
+     */
+    static PieceGenerator uniform (long seed) {
+        return new Uniform(seed);
+    }
+
+    /**
+     * @param seed      the seed of the sequence
+     * @return          a generator that deals the shapes from shuffled bags of seven
+     */
+    static PieceGenerator bag (long seed) {
+        return new Bag(seed);
+    }
+
+    /**
+     * @return      a generator that picks every shape at random, with a random seed
+     */
+    static PieceGenerator uniform () {
+        return new Uniform(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @return      the seed the generator was built from
+     */
+    long getSeed () {
+        return seed;
+    }
+
+    /**
+     * @return      the number of shapes that have been dealt
+     */
+    long getDealt () {
+        return dealt;
+    }
+
+    /**
+     * Puts the generator back to where it was after a number of shapes had been
+     * dealt, by dealing them again from the seed.
+     * @param dealt     the number of shapes that had been dealt
+     */
+    void restore (long dealt) {
+        random = new SplittableRandom(seed);
+        reset();
+        this.dealt = 0;
+        for (long i = 0; i < dealt; i++) next();
+    }
+
+    /**
+     * @return      the mode of the generator
+     */
+    abstract Mode getMode ();
+
+    /**
+     * @return      the shape of the next piece
+     */
+    final Piece.Shape next () {
+        dealt++;
+        return deal();
+    }
+
+    /**
+     * @return      the shape of the next piece, for next() to count
+     */
+    abstract Piece.Shape deal ();
+
+    /**
+     * Forgets any state kept between shapes.
+     */
+    abstract void reset ();
+
+    private static final class Uniform extends PieceGenerator {
+
+        Uniform (long seed) {
+            super(seed);
+        }
+
+        @Override
+        Mode getMode () {
+            return Mode.UNIFORM;
+        }
+
+        @Override
+        Piece.Shape deal () {
+            return SHAPES[random.nextInt(SHAPES.length)];
+        }
+
+        @Override
+        void reset () {
+        }
+
+    }
+
+    private static final class Bag extends PieceGenerator {
+
+        private final Piece.Shape[] bag = SHAPES.clone();
+        private int next = bag.length;
+
+        Bag (long seed) {
+            super(seed);
+        }
+
+        @Override
+        Mode getMode () {
+            return Mode.BAG;
+        }
+
+        @Override
+        void reset () {
+            System.arraycopy(SHAPES, 0, bag, 0, bag.length);
+            next = bag.length;
+        }
+
+        @Override
+        Piece.Shape deal () {
+            if (next == bag.length) {
+                shuffle();
+                next = 0;
+            }
+            return bag[next++];
+        }
+
+        /**
+         * Fisher-Yates shuffle of the bag in place.
+         */
+        private void shuffle () {
+            for (int i = bag.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                Piece.Shape swap = bag[i];
+                bag[i] = bag[j];
+                bag[j] = swap;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * The pieces that come after the one that is dropping, as far ahead as the preview
+ * shows them.
+ * <br/>
+ * The queue is a ring of shape ordinals, filled from a PieceGenerator. Taking a
+ * shape from the front deals a new one into the slot it leaves, so the queue is
+ * always full and taking or looking at shapes never allocates. Looking ahead does
+ * not change which pieces are dealt, so boards of the same seed get the same
+ * pieces however deep their previews are.
+ */
+final class PieceQueue {
+
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+
+    private final PieceGenerator generator;
+    private final byte[] shapes;
+    private int head = 0;       // The slot of the next shape to be taken.
+    private long taken = 0;
+
+    /**
+     * Construct a queue and fill it.
+     * @param generator     the source of the shapes
+     * @param depth         the number of shapes to show ahead, which may be 0
+     */
+    PieceQueue (PieceGenerator generator, int depth) {
+        if (depth < 0) throw new IllegalArgumentException("Depth must not be negative: " + depth);
+        this.generator = generator;
+        this.shapes = new byte[depth];
+        fill();
+    }
+
+    private void fill () {
+        head = 0;
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = (byte) generator.next().ordinal();
+        }
+    }
+
+    /**
+     * Takes the shape at the front of the queue, and deals a new one onto the back.
+     * @return      the shape
+     */
+    Piece.Shape take () {
+        taken++;
+        if (shapes.length == 0) return generator.next();
+
+        Piece.Shape shape = SHAPES[shapes[head]];
+        shapes[head] = (byte) generator.next().ordinal();
+        if (++head == shapes.length) head = 0;
+        return shape;
+    }
+
+    /**
+     * @param index     how far back in the queue the shape is, where 0 is the front
+     * @return          the shape
+     */
+    Piece.Shape peek (int index) {
+        if (index < 0 || index >= shapes.length) {
+            throw new IndexOutOfBoundsException("No shape " + index + " in a queue of " + shapes.length);
+        }
+        int slot = head + index;
+        if (slot >= shapes.length) slot -= shapes.length;
+        return SHAPES[shapes[slot]];
+    }
+
+    /**
+     * @return      the number of shapes in the queue
+     */
+    int getDepth () {
+        return shapes.length;
+    }
+
+    /**
+     * @return      the number of shapes that have been taken from the queue
+     */
+    long getTaken () {
+        return taken;
+    }
+
+    /**
+     * Puts the queue back to where it was after a number of shapes had been taken,
+     * by dealing them again from the seed of the generator.
+     * @param taken     the number of shapes that had been taken
+     */
+    void restore (long taken) {
+        generator.restore(taken);
+        this.taken = taken;
+        fill();
+    }
+
+}
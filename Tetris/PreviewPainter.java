@@ -0,0 +1,114 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Paints the piece that is held and the pieces that come next, from a snapshot,
+ * in a column beside the board.
+ * <br/>
+ * The held piece is at the top and the pieces that come next are below it, in the
+ * order they will drop. Each piece is shown lying flat, centred in a box two Squares
+ * tall, using the same images as the board, see Sprites.
+ */
+final class PreviewPainter {
+
+    /**
+     * The width of the column, in Squares.
+     */
+    static final int COLUMNS = 5;
+
+    private static final int BOX = 3;   // The rows of a piece and the gap below it.
+
+    private final int previews;
+    private final int size;
+
+    private final Sprites sprites;
+    private final BufferedImage background;
+    private final Font font;
+
+    /**
+     * Construct a painter.
+     * @param previews  the number of pieces that come next to paint
+     * @param size      the size of each square
+     */
+    PreviewPainter (int previews, int size) {
+        this.previews = previews;
+        this.size = size;
+
+        sprites = Sprites.forSize(size);
+        background = sprites.createBackground(getRows(), COLUMNS);
+        font = new Font(Font.SANS_SERIF, Font.BOLD, Math.max(8, size * 2 / 3));
+    }
+
+    /**
+     * @return      the height of the column, in Squares
+     */
+    int getRows () {
+        return 2 + 2 * BOX + (previews - 1) * BOX;
+    }
+
+    /**
+     * Paints the pieces of a snapshot.
+     * @param graphics  what to paint on
+     * @param snapshot  the snapshot to paint
+     */
+    void paint (Graphics graphics, Snapshot snapshot) {
+
+        graphics.drawImage(background, 0, 0, null);
+
+        graphics.setFont(font);
+        graphics.setColor(Color.LIGHT_GRAY);
+        graphics.drawString("HOLD", size / 2, size - size / 5);
+        paintShape(graphics, snapshot.getHeld(), size);
+
+        if (previews == 0) return;
+
+        int top = (1 + BOX) * size;
+        graphics.drawString("NEXT", size / 2, top + size - size / 5);
+        for (int i = 0; i < previews && i < snapshot.getPreviews(); i++) {
+            paintShape(graphics, snapshot.getNext(i), top + size + i * BOX * size);
+        }
+
+    }
+
+    /**
+     * Paints a shape centred in a box two Squares tall.
+     * @param shape     the shape, or null to paint nothing
+     * @param top       the top of the box in pixels
+     */
+    private void paintShape (Graphics graphics, Piece.Shape shape, int top) {
+
+        if (shape == null) return;
+
+        // The rotation that takes the fewest rows.
+        Piece.Rotation rotation = null;
+        int minRow = 0, maxRow = 0, minColumn = 0, maxColumn = 0;
+        for (int index = 0; index < shape.getRotations(); index++) {
+            Piece.Rotation candidate = shape.getRotation(index);
+            int high = Integer.MAX_VALUE, low = 0, left = Integer.MAX_VALUE, right = 0;
+            for (int square = 0; square < candidate.getSquares(); square++) {
+                high = Math.min(high, candidate.getRow(square));
+                low = Math.max(low, candidate.getRow(square));
+                left = Math.min(left, candidate.getColumn(square));
+                right = Math.max(right, candidate.getColumn(square));
+            }
+            if (rotation == null || low - high < maxRow - minRow) {
+                rotation = candidate;
+                minRow = high;
+                maxRow = low;
+                minColumn = left;
+                maxColumn = right;
+            }
+        }
+
+        int x = (COLUMNS * size - (maxColumn - minColumn + 1) * size) / 2;
+        int y = top + (2 * size - (maxRow - minRow + 1) * size) / 2;
+
+        BufferedImage tile = sprites.getTile(shape.getColor());
+        for (int square = 0; square < rotation.getSquares(); square++) {
+            graphics.drawImage(tile, x + (rotation.getColumn(square) - minColumn) * size,
+                    y + (rotation.getRow(square) - minRow) * size, null);
+        }
+
+    }
+
+}
@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Plays back a replay written by ReplayWriter.
+ * <br/>
+ * The replay is re-simulated on a new GameBoard, which is dealt the same pieces
+ * because it gets the same generator seed. The gravity is not in the replay, and is
+ * played again by a Simulator with the same GravityTable, one tick at a time between
+ * the commands. Commands can be played one at a time, up to a tick for playing at
+ * real time, or all at once at full speed. Seeking restores the board from the last
+ * keyframe at or before the tick, and plays the rest of the way from there.
+ * <br/>
+ * The file is memory-mapped, so seeking is only a change of position.
+ */
+final class ReplayPlayer {
+
+    private static final Simulator.Input[] INPUTS = Simulator.Input.values();
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+
+    private final MappedByteBuffer buffer;
+    private final int start;    // Where the commands start.
+    private final int end;      // Where the commands end.
+
+    private final long[] keyframeTicks;
+    private final long[] keyframeOffsets;
+
+    private final int rows;
+    private final int columns;
+    private final PieceGenerator.Mode mode;
+    private final long seed;
+    private final GravityTable gravity;     // Null if the pieces only fell by step().
+    private final int sizeOfPiece;
+
+    private GameBoard gameBoard;
+    private Simulator simulator;
+
+    // The command that is played next, decoded ahead of time.
+    private long nextTick;
+    private int nextCommand;
+    private boolean hasNext;
+
+    /**
+     * Opens a replay to play without a display.
+     * @param path          the file to play
+     * @throws IOException  if the file cannot be read or is not a replay
+     */
+    ReplayPlayer (Path path) throws IOException {
+        this(path, 0);
+    }
+
+    /**
+     * Opens a replay.
+     * @param path          the file to play
+     * @param sizeOfPiece   the size of each square, if the board is to be painted
+     * @throws IOException  if the file cannot be read or is not a replay
+     */
+    ReplayPlayer (Path path, int sizeOfPiece) throws IOException {
+        this.sizeOfPiece = sizeOfPiece;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.limit() < 22 || buffer.getInt(0) != ReplayWriter.MAGIC) {
+            throw new IOException("Not a replay: " + path);
+        }
+        rows = buffer.getInt(4);
+        columns = buffer.getInt(8);
+        mode = PieceGenerator.Mode.values()[buffer.get(12)];
+        seed = buffer.getLong(13);
+
+        buffer.position(21);
+        long[] speeds = new long[(int) readVarLong()];
+        for (int i = 0; i < speeds.length; i++) speeds[i] = readVarLong();
+        gravity = speeds.length == 0 ? null : GravityTable.of(speeds);
+        start = buffer.position();
+
+        // A replay that was not closed has no index, and can only be played from the start.
+        int size = buffer.limit();
+        if (size >= start + 12 && buffer.getInt(size - 4) == ReplayWriter.MAGIC) {
+            end = (int) buffer.getLong(size - 12);
+            buffer.position(end);
+            int count = (int) readVarLong();
+            keyframeTicks = new long[count];
+            keyframeOffsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                keyframeTicks[i] = readVarLong();
+                keyframeOffsets[i] = buffer.getLong();
+            }
+        } else {
+            end = size;
+            keyframeTicks = new long[0];
+            keyframeOffsets = new long[0];
+        }
+
+        rewind();
+    }
+
+    GameBoard getGameBoard () {
+        return gameBoard;
+    }
+
+    Simulator getSimulator () {
+        return simulator;
+    }
+
+    /**
+     * @return      true if there are commands left to play, up to the end of the game
+     */
+    boolean hasNext () {
+        return hasNext;
+    }
+
+    /**
+     * @return      the tick of the next command
+     */
+    long getNextTick () {
+        return nextTick;
+    }
+
+    /**
+     * Plays the next command, after the gravity of every tick before it.
+     * @return      the result of the command, or null if it was a keyframe or the end
+     */
+    Simulator.Result next () {
+        if (!hasNext) throw new IllegalStateException("The replay has ended");
+
+        while (simulator.getTick() < nextTick) simulator.tick();
+        Simulator.Result result = null;
+
+        if (nextCommand == ReplayWriter.STEP) {
+            result = simulator.step();
+        } else if (nextCommand == ReplayWriter.KEYFRAME) {
+            skipKeyframe();
+        } else if (nextCommand == ReplayWriter.END) {
+            hasNext = false;
+            return null;
+        } else {
+            result = simulator.apply(INPUTS[nextCommand]);
+        }
+
+        readCommand();
+        return result;
+    }
+
+    /**
+     * Plays the game up to the end of a tick: the gravity of every tick up to it,
+     * and every command that came on or before it. Stops early at the end of the
+     * replay.
+     * @param tick  the tick to play to
+     */
+    void playUntil (long tick) {
+        while (hasNext) {
+            if (nextTick <= simulator.getTick()) {
+                next();
+            } else if (simulator.getTick() < tick) {
+                simulator.tick();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Plays every command that is left, as fast as possible.
+     */
+    void playToEnd () {
+        while (hasNext) next();
+    }
+
+    /**
+     * Moves the game to the state it had once every command up to a tick had been
+     * played, from the nearest keyframe.
+     * @param tick  the tick to seek to
+     */
+    void seek (long tick) {
+        int keyframe = Arrays.binarySearch(keyframeTicks, tick);
+        if (keyframe < 0) keyframe = -keyframe - 2;
+        // Several keyframes can share a tick, take the last of them.
+        while (keyframe >= 0 && keyframe + 1 < keyframeTicks.length && keyframeTicks[keyframe + 1] <= tick) {
+            keyframe++;
+        }
+
+        if (keyframe < 0) {
+            rewind();
+        } else {
+            buffer.position((int) keyframeOffsets[keyframe]);
+            readCommand();
+            nextTick = keyframeTicks[keyframe];
+            simulator.setTick(nextTick);
+            restoreKeyframe();
+            readCommand();
+        }
+
+        playUntil(tick);
+    }
+
+    /**
+     * Starts the game again from the beginning.
+     */
+    void rewind () {
+        gameBoard = new GameBoard(rows, columns, sizeOfPiece, mode.create(seed));
+        simulator = new Simulator(gameBoard, gravity);
+        nextTick = 0;
+        buffer.position(start);
+        readCommand();
+    }
+
+    /**
+     * Restores the game from the keyframe the buffer is at.
+     */
+    private void restoreKeyframe () {
+        long steps = readVarLong();
+        long pieces = readVarLong();
+        long fallen = readVarLong();
+        long taken = readVarLong();
+        int score = (int) readVarLong();
+        int lines = (int) readVarLong();
+        int combo = (int) readVarLong() - 1;
+        boolean gameOver = buffer.get() != 0;
+        Piece.Shape shape = SHAPES[buffer.get()];
+        int rotation = buffer.get();
+        int x = unZigZag(readVarLong());
+        int y = unZigZag(readVarLong());
+        int held = buffer.get();
+        boolean canHold = buffer.get() != 0;
+
+        gameBoard.restore(shape, rotation, x, y, held == 0 ? null : SHAPES[held - 1], canHold,
+                taken, score, lines, combo, gameOver);
+        simulator.restore(steps, pieces, fallen);
+
+        int top = (int) readVarLong();
+        for (int row = top; row < rows; row++) {
+            for (long bits = readVarLong(); bits != 0; bits &= bits - 1) {
+                gameBoard.restoreSquare(row, Long.numberOfTrailingZeros(bits), -buffer.get());
+            }
+        }
+    }
+
+    private void skipKeyframe () {
+        for (int i = 0; i < 7; i++) readVarLong();
+        buffer.position(buffer.position() + 3);
+        readVarLong();
+        readVarLong();
+        buffer.position(buffer.position() + 2);
+
+        int top = (int) readVarLong();
+        for (int row = top; row < rows; row++) {
+            long mask = readVarLong();
+            buffer.position(buffer.position() + Long.bitCount(mask));
+        }
+    }
+
+    private void readCommand () {
+        if (buffer.position() >= end) {
+            hasNext = false;
+            return;
+        }
+
+        int value = buffer.get() & 0xFF;
+        long delta = value >>> ReplayWriter.COMMAND_BITS;
+        if (delta == ReplayWriter.LONG_DELTA) delta = readVarLong();
+
+        nextTick += delta;
+        nextCommand = value & (1 << ReplayWriter.COMMAND_BITS) - 1;
+        hasNext = true;
+    }
+
+    private long readVarLong () {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static int unZigZag (long value) {
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    /**
+     * Plays a replay headless as fast as possible and prints the final score, or
+     * seeks to a tick and prints the score at that point.
+     * @param args  the replay file, and optionally the tick to seek to
+     * @throws IOException  if the replay cannot be read
+     */
+    public static void main (String[] args) throws IOException {
+        ReplayPlayer player = new ReplayPlayer(Path.of(args[0]));
+        long start = System.nanoTime();
+
+        if (args.length > 1) {
+            player.seek(Long.parseLong(args[1]));
+        } else {
+            player.playToEnd();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        Simulator simulator = player.getSimulator();
+        System.out.printf("Tick %d, %d pieces, %d lines, score %d, %.3f seconds%n",
+                simulator.getTick(), simulator.getPieces(), simulator.getLines(), simulator.getScore(), elapsed);
+    }
+
+}
@@ -0,0 +1,227 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records a game into a compact binary replay, see ReplayPlayer for playing it.
+ * <br/>
+ * A game is fully decided by the seed of its piece generator, its gravity and the
+ * ticks its inputs came on, so that is all a replay needs. The file starts with the
+ * size of the board, the mode and seed of the generator and the speeds of the
+ * GravityTable. Then comes one byte per input, holding the command in its low four
+ * bits and the number of ticks since the last command in its high four bits. A
+ * longer gap is written as a varint after the byte. Gravity is not written, as the
+ * player works it out again from the table, the level and the ticks, however many
+ * rows it pulls a piece down, so played by hand this is a few bytes per piece. The
+ * commands end with END, on the tick the recording stopped.
+ * <br/>
+ * Every few pieces the whole board is written as a keyframe, so a player can seek
+ * by restoring the nearest keyframe instead of playing from the start. The tick
+ * and file offset of each keyframe are written as an index at the end of the file.
+ * Everything goes through one direct buffer into a file channel.
+ */
+final class ReplayWriter implements Closeable {
+
+    static final int MAGIC = 0x54525034; // "TRP4"
+
+    // Commands 0 to 6 are the ordinals of Simulator.Input.
+    static final int STEP = 7;      // A call to Simulator.step(), not gravity.
+    static final int KEYFRAME = 8;
+    static final int END = 9;
+
+    static final int COMMAND_BITS = 4;
+    static final int LONG_DELTA = 15;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final int keyframeInterval;
+
+    private long written = 0;   // Bytes already handed to the channel.
+    private long lastTick = 0;
+
+    private long[] keyframeTicks = new long[16];
+    private long[] keyframeOffsets = new long[16];
+    private int keyframes = 0;
+
+    /**
+     * Starts a replay of a new game.
+     * @param path              the file to write, which is replaced if it exists
+     * @param simulator         the game, before anything has happened in it
+     * @param keyframeInterval  the number of pieces between keyframes
+     * @throws IOException      if the file cannot be opened
+     */
+    ReplayWriter (Path path, Simulator simulator, int keyframeInterval) throws IOException {
+        this.keyframeInterval = keyframeInterval;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        GameBoard gameBoard = simulator.getGameBoard();
+        PieceGenerator generator = gameBoard.getGenerator();
+        buffer.putInt(MAGIC);
+        buffer.putInt(gameBoard.getRows());
+        buffer.putInt(gameBoard.getColumns());
+        buffer.put((byte) generator.getMode().ordinal());
+        buffer.putLong(generator.getSeed());
+
+        // No levels means the pieces only fall by step().
+        GravityTable gravity = simulator.getGravity();
+        int levels = gravity == null ? 0 : gravity.getLevels();
+        writeVarLong(levels);
+        for (int level = 1; level <= levels; level++) {
+            ensure(10);
+            writeVarLong(gravity.getRowsPerTick(level));
+        }
+    }
+
+    /**
+     * @return      the number of pieces between keyframes
+     */
+    int getKeyframeInterval () {
+        return keyframeInterval;
+    }
+
+    /**
+     * Records a step or an input.
+     * @param tick      the tick it happened on, which must not be before the last one
+     * @param command   the ordinal of the input, or STEP
+     */
+    void record (long tick, int command) {
+        ensure(16);
+        writeCommand(tick, command);
+    }
+
+    /**
+     * Records the tick the game stops on, which a player plays the gravity up to.
+     * Nothing should be recorded after it.
+     * @param tick      the last tick of the game
+     */
+    void end (long tick) {
+        record(tick, END);
+    }
+
+    /**
+     * Records the whole state of a game as a keyframe.
+     * @param tick          the tick the keyframe is taken on
+     * @param simulator     the game
+     */
+    void keyframe (long tick, Simulator simulator) {
+        GameBoard gameBoard = simulator.getGameBoard();
+        Piece piece = gameBoard.getPiece();
+
+        ensure(80);
+        if (keyframes == keyframeTicks.length) {
+            keyframeTicks = Arrays.copyOf(keyframeTicks, keyframes * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes * 2);
+        }
+        keyframeTicks[keyframes] = tick;
+        keyframeOffsets[keyframes] = written + buffer.position();
+        keyframes++;
+
+        writeCommand(tick, KEYFRAME);
+        writeVarLong(simulator.getSteps());
+        writeVarLong(simulator.getPieces());
+        writeVarLong(simulator.getFallen());
+        writeVarLong(gameBoard.getPreview().getTaken());
+        writeVarLong(gameBoard.getScore());
+        writeVarLong(gameBoard.getLines());
+        writeVarLong(gameBoard.getCombo() + 1);
+        buffer.put((byte) (gameBoard.isGameOver() ? 1 : 0));
+        buffer.put((byte) piece.getShape().ordinal());
+        buffer.put((byte) piece.getRotationIndex());
+        writeVarLong(zigZag(piece.getX()));
+        writeVarLong(zigZag(piece.getY()));
+        buffer.put((byte) (gameBoard.getHeld() == null ? 0 : gameBoard.getHeld().ordinal() + 1));
+        buffer.put((byte) (gameBoard.canHold() ? 1 : 0));
+
+        // The rows above the highest settled Square are empty and are not written.
+        int rows = gameBoard.getRows();
+        int top = 0;
+        while (top < rows && gameBoard.getMask(top) == 0) top++;
+        writeVarLong(top);
+
+        for (int row = top; row < rows; row++) {
+            long mask = gameBoard.getMask(row);
+            ensure(10 + Long.SIZE);
+            writeVarLong(mask);
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                buffer.put((byte) -gameBoard.getColor(row, Long.numberOfTrailingZeros(bits)));
+            }
+        }
+    }
+
+    /**
+     * Writes the index of the keyframes and closes the file.
+     * @throws IOException  if the file cannot be written
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            long index = written + buffer.position();
+            ensure(16);
+            writeVarLong(keyframes);
+            for (int i = 0; i < keyframes; i++) {
+                ensure(32);
+                writeVarLong(keyframeTicks[i]);
+                buffer.putLong(keyframeOffsets[i]);
+            }
+            ensure(16);
+            buffer.putLong(index);
+            buffer.putInt(MAGIC);
+            flush();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeCommand (long tick, int command) {
+        long delta = tick - lastTick;
+        if (delta < 0) throw new IllegalArgumentException("Tick " + tick + " is before tick " + lastTick);
+        lastTick = tick;
+
+        if (delta < LONG_DELTA) {
+            buffer.put((byte) (delta << COMMAND_BITS | command));
+        } else {
+            buffer.put((byte) (LONG_DELTA << COMMAND_BITS | command));
+            writeVarLong(delta);
+        }
+    }
+
+    private void writeVarLong (long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long zigZag (int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Makes sure the buffer has room for a number of bytes, writing it out if it does not.
+     */
+    private void ensure (int bytes) {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush () {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        buffer.clear();
+    }
+
+}
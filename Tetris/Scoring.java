@@ -0,0 +1,79 @@
+/**
+ * Decides how many points a game scores and what level it is on.
+ * <br/>
+ * A GameBoard asks its scoring for points whenever a lock clears lines and whenever
+ * the player drops a piece faster than gravity. The level only depends on the number
+ * of lines that have been cleared, so it never has to be saved with a board. A
+ * scoring keeps no state of its own, and one can be shared by any number of boards.
+ * <br/>
+ * Other rules are given to a board by extending this class, see GameBoard.setScoring().
+ */
+abstract class Scoring {
+
+    /**
+     * The number of lines that have to be cleared to go up a level.
+     */
+    static final int LINES_PER_LEVEL = 10;
+
+    /**
+     * @return      the scoring of the guideline games: more points for clearing
+     *              several lines with one piece, a bonus for clearing lines with
+     *              piece after piece, and points for every row dropped by hand
+     */
+    static Scoring guideline () {
+        return new Guideline();
+    }
+
+    /**
+     * @param cleared   the number of lines the lock cleared, at least 1
+     * @param level     the level the lines were cleared on
+     * @param combo     the number of locks in a row just before this one that
+     *                  also cleared lines
+     * @return          the points for the lines
+     */
+    abstract int lines (int cleared, int level, int combo);
+
+    /**
+     * @param rows  the number of rows the piece was soft dropped
+     * @return      the points for the drop
+     */
+    abstract int softDrop (int rows);
+
+    /**
+     * @param rows  the number of rows the piece was hard dropped
+     * @return      the points for the drop
+     */
+    abstract int hardDrop (int rows);
+
+    /**
+     * @param lines     the number of lines cleared in the game
+     * @return          the level, starting at 1
+     */
+    int level (int lines) {
+        return 1 + lines / LINES_PER_LEVEL;
+    }
+
+    private static final class Guideline extends Scoring {
+
+        // The points for clearing 1, 2, 3 and 4 lines with one piece, times the level.
+        private static final int[] POINTS = {0, 100, 300, 500, 800};
+        private static final int COMBO = 50;
+
+        @Override
+        int lines (int cleared, int level, int combo) {
+            return (POINTS[Math.min(cleared, POINTS.length - 1)] + COMBO * combo) * level;
+        }
+
+        @Override
+        int softDrop (int rows) {
+            return rows;
+        }
+
+        @Override
+        int hardDrop (int rows) {
+            return 2 * rows;
+        }
+
+    }
+
+}
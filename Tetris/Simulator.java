@@ -0,0 +1,268 @@
+import java.util.Random;
+
+/**
+ * Runs a game of Tetris without a display.
+ * <br/>
+ * The simulator drives a GameBoard one step at a time. Each call to step() pulls the
+ * dropping piece down by one Square, and each call to apply() performs one player
+ * input. Nothing waits on a clock, so games run as fast as the CPU allows. When the
+ * game ends the result says so, and the caller decides what to do next.
+ * <br/>
+ * A caller that has a clock tells the simulator when a tick passes with tick(),
+ * which lets the piece fall by the gravity of the level, see GravityTable. The
+ * gravity is worked out from the table, the level and the ticks alone, so it is not
+ * written to a ReplayWriter: a replay holds the inputs and the ticks they came on,
+ * and plays the gravity again by calling tick() in the same way.
+ */
+class Simulator {
+
+    /**
+     * The inputs a player can give.
+     */
+    enum Input {
+        LEFT,
+        RIGHT,
+        ROTATE_CLOCKWISE,
+        ROTATE_COUNTER_CLOCKWISE,
+        SOFT_DROP,
+        HARD_DROP,
+        HOLD
+    }
+
+    /**
+     * The outcome of a step or an input.
+     */
+    enum Result {
+        MOVED,      // The piece moved.
+        BLOCKED,    // The piece could not move, and nothing changed.
+        LOCKED,     // The piece was locked and a new piece was spawned.
+        GAME_OVER   // The piece was locked and no new piece could be spawned.
+    }
+
+    private final GameBoard gameBoard;
+    private final GravityTable gravity;     // Null if the pieces only fall by step().
+
+    private long steps = 0;
+    private long pieces = 0;
+    private long tick = 0;
+    private long fallen = 0;    // Fixed point rows of gravity not yet fallen.
+
+    private ReplayWriter recorder;
+
+    /**
+     * Construct a simulator for a new game, whose pieces only fall by step().
+     * @param gameBoard     the board to play on
+     */
+    Simulator (GameBoard gameBoard) {
+        this(gameBoard, null);
+    }
+
+    /**
+     * Construct a simulator for a new game.
+     * @param gameBoard     the board to play on
+     * @param gravity       how fast the pieces fall on each level, or null if they
+     *                      only fall by step()
+     */
+    Simulator (GameBoard gameBoard, GravityTable gravity) {
+        this.gameBoard = gameBoard;
+        this.gravity = gravity;
+    }
+
+    /**
+     * Moves the piece that is dropping down one Square, locking it if it cannot move.
+     * @return      the result of the step
+     */
+    Result step () {
+        steps++;
+        if (recorder != null) recorder.record(tick, ReplayWriter.STEP);
+        return moveDown();
+    }
+
+    /**
+     * Moves the clock on by one tick, and lets the piece that is dropping fall by the
+     * gravity of the level. The gravity is added up in fixed point, so a tick may
+     * move the piece down by several rows, or by none at all. Nothing is recorded.
+     * @return      the result of the fall, or BLOCKED if the piece did not fall
+     */
+    Result tick () {
+        tick++;
+        if (gravity == null || gameBoard.isGameOver()) return moved(false);
+
+        fallen += gravity.getRowsPerTick(gameBoard.getLevel());
+        int rows = (int) (fallen >>> GravityTable.FRACTION_BITS);
+        fallen &= GravityTable.ONE_ROW - 1;
+        return fall(rows);
+    }
+
+    /**
+     * Lets the piece that is dropping fall by gravity. The piece falls by up to the
+     * given number of rows in one move, so falling many rows costs about as much as
+     * falling one. A piece that lands stops there, and the rows that are left are
+     * dropped rather than carried over. It is only locked by the next fall, so even
+     * at 20G each piece can be moved for a tick where it lands, and at most one piece
+     * is locked per call. The new piece starts on its spawn row.
+     * @param rows      the most rows to fall
+     * @return          MOVED if the piece fell, the result of the lock if it had
+     *                  already landed, or BLOCKED if rows is 0
+     */
+    private Result fall (int rows) {
+        if (rows <= 0) return Result.BLOCKED;
+
+        int fallen = gameBoard.fall(rows);
+        steps += Math.max(1, fallen);
+        if (fallen == 0) return moveDown();
+        return Result.MOVED;
+    }
+
+    /**
+     * Performs one player input.
+     * @param input     the input to perform
+     * @return          the result of the input
+     */
+    Result apply (Input input) {
+        if (gameBoard.isGameOver()) return Result.GAME_OVER;
+        if (recorder != null) recorder.record(tick, input.ordinal());
+
+        switch (input) {
+            case LEFT:                      return moved(gameBoard.moveLeft());
+            case RIGHT:                     return moved(gameBoard.moveRight());
+            case ROTATE_CLOCKWISE:          return moved(gameBoard.rotateClockwise());
+            case ROTATE_COUNTER_CLOCKWISE:  return moved(gameBoard.rotateCounterClockwise());
+            case SOFT_DROP:                 return gameBoard.softDrop() ? Result.MOVED : locked();
+            case HARD_DROP:
+                gameBoard.hardDrop();
+                return locked();
+            case HOLD:
+                if (!gameBoard.hold()) return Result.BLOCKED;
+                return gameBoard.isGameOver() ? Result.GAME_OVER : Result.MOVED;
+            default:
+                throw new IllegalArgumentException("Unknown input: " + input);
+        }
+    }
+
+    private Result moveDown () {
+        if (gameBoard.isGameOver()) return Result.GAME_OVER;
+        if (gameBoard.moveDown()) return Result.MOVED;
+        return locked();
+    }
+
+    /**
+     * Counts the piece that was just locked.
+     */
+    private Result locked () {
+        pieces++;
+        if (recorder != null && pieces % recorder.getKeyframeInterval() == 0) {
+            recorder.keyframe(tick, this);
+        }
+        return gameBoard.isGameOver() ? Result.GAME_OVER : Result.LOCKED;
+    }
+
+    private Result moved (boolean moved) {
+        return moved ? Result.MOVED : Result.BLOCKED;
+    }
+
+    /**
+     * Records every step and input from now on. The writer should be started
+     * before anything has happened in the game.
+     * @param recorder  the replay to write to
+     */
+    void record (ReplayWriter recorder) {
+        this.recorder = recorder;
+    }
+
+    void setTick (long tick) {
+        this.tick = tick;
+    }
+
+    long getTick () {
+        return tick;
+    }
+
+    /**
+     * Sets the counters when a game is restored from a keyframe.
+     * @param steps     the number of rows that had been stepped and fallen
+     * @param pieces    the number of pieces that had been locked
+     * @param fallen    the fixed point rows of gravity not yet fallen
+     */
+    void restore (long steps, long pieces, long fallen) {
+        this.steps = steps;
+        this.pieces = pieces;
+        this.fallen = fallen;
+    }
+
+    GravityTable getGravity () {
+        return gravity;
+    }
+
+    /**
+     * @return      the fixed point rows of gravity that have been added up but not yet fallen
+     */
+    long getFallen () {
+        return fallen;
+    }
+
+    GameBoard getGameBoard () {
+        return gameBoard;
+    }
+
+    boolean isGameOver () {
+        return gameBoard.isGameOver();
+    }
+
+    int getScore () {
+        return gameBoard.getScore();
+    }
+
+    int getLines () {
+        return gameBoard.getLines();
+    }
+
+    /**
+     * @return      the number of rows the pieces have been stepped and fallen, with a
+     *              lock by gravity counting as one
+     */
+    long getSteps () {
+        return steps;
+    }
+
+    /**
+     * @return      the number of pieces that have been locked
+     */
+    long getPieces () {
+        return pieces;
+    }
+
+    /**
+     * Plays games with random inputs for a few seconds and prints how many pieces
+     * were placed per second.
+     * @param args  optionally, the number of seconds to run for and the level whose
+     *              gravity pulls the pieces down each tick, otherwise one row a tick
+     */
+    public static void main (String[] args) {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        GravityTable gravity = GravityTable.of(args.length > 1
+                ? GravityTable.guideline(60).getRowsPerTick(Integer.parseInt(args[1])) : GravityTable.ONE_ROW);
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Input[] inputs = Input.values();
+        Random random = new Random();
+        long games = 0, pieces = 0;
+        long start = System.nanoTime();
+
+        while (System.nanoTime() < end) {
+            Simulator simulator = new Simulator(new GameBoard(18, 10), gravity);
+
+            while (!simulator.isGameOver()) {
+                simulator.apply(inputs[random.nextInt(inputs.length)]);
+                simulator.tick();
+            }
+
+            games++;
+            pieces += simulator.getPieces();
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d games, %d pieces, %.0f pieces per second%n", games, pieces, pieces / elapsed);
+    }
+
+}
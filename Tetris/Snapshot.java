@@ -0,0 +1,144 @@
+/**
+ * A copy of everything needed to draw a game board at one moment: the settled
+ * squares, the piece that is dropping, and the pieces that are held and come next.
+ * <br/>
+ * A Snapshot is filled by GameBoard.copyTo() on the game thread and then only read,
+ * see SnapshotBuffer for how it is handed over to the renderer. Its arrays are
+ * reused each time it is filled, so copying a board allocates nothing.
+ */
+final class Snapshot {
+
+    private final int rows;
+    private final int columns;
+
+    final long[] masks;
+    final int[] colors;     // One color per Square, row by row.
+
+    Piece.Shape shape;
+    int rotation;
+    int x, y;
+    int ghostY;
+
+    final Piece.Shape[] next;
+    Piece.Shape held;
+
+    int score;
+    int lines;
+    int level;
+    boolean gameOver;
+    long version;
+
+    /**
+     * Construct an empty snapshot for boards of the given size.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     * @param previews  the number of pieces that come next to copy
+     */
+    Snapshot (int rows, int columns, int previews) {
+        this.rows = rows;
+        this.columns = columns;
+        masks = new long[rows];
+        colors = new int[rows * columns];
+        next = new Piece.Shape[previews];
+    }
+
+    int getRows () {
+        return rows;
+    }
+
+    int getColumns () {
+        return columns;
+    }
+
+    /**
+     * @param row   the row
+     * @return      the mask of the settled squares of the row, where bit c is set if column c is filled
+     */
+    long getMask (int row) {
+        return masks[row];
+    }
+
+    /**
+     * @param row       the row of the Square
+     * @param column    the column of the Square
+     * @return          the color of the settled Square, or 0 if it is empty
+     */
+    int getColor (int row, int column) {
+        return colors[row * columns + column];
+    }
+
+    /**
+     * @return      the shape of the piece that is dropping
+     */
+    Piece.Shape getShape () {
+        return shape;
+    }
+
+    /**
+     * @return      the rotation of the piece that is dropping
+     */
+    Piece.Rotation getRotation () {
+        return shape.getRotation(rotation);
+    }
+
+    int getX () {
+        return x;
+    }
+
+    int getY () {
+        return y;
+    }
+
+    /**
+     * @return      the y coordinate the piece that is dropping would land at
+     */
+    int getGhostY () {
+        return ghostY;
+    }
+
+    /**
+     * @param index     how far after the dropping piece the piece comes, where 0 is the next one
+     * @return          the shape of the piece, or null if it is not shown
+     */
+    Piece.Shape getNext (int index) {
+        return next[index];
+    }
+
+    /**
+     * @return      the number of pieces that come next that were copied
+     */
+    int getPreviews () {
+        return next.length;
+    }
+
+    /**
+     * @return      the shape that is held, or null if none is
+     */
+    Piece.Shape getHeld () {
+        return held;
+    }
+
+    int getScore () {
+        return score;
+    }
+
+    int getLines () {
+        return lines;
+    }
+
+    int getLevel () {
+        return level;
+    }
+
+    boolean isGameOver () {
+        return gameOver;
+    }
+
+    /**
+     * @return      how many snapshots had been published before this one
+     */
+    long getVersion () {
+        return version;
+    }
+
+}
@@ -0,0 +1,101 @@
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands snapshots of a game board from the game thread to the renderer without locks.
+ * <br/>
+ * There are three snapshots. The game thread fills its back snapshot and swaps it
+ * with the ready one, and the renderer swaps its front snapshot with the ready one
+ * when the ready one is newer. Each side only ever touches the snapshot it holds,
+ * so the renderer never sees a board half way through a tick, and neither side
+ * waits for the other. If the game publishes faster than the renderer draws, the
+ * renderer simply skips to the newest snapshot.
+ * <br/>
+ * Only the rows that have changed are copied. The game thread keeps, for each of
+ * the three snapshots, the rows that have changed since it last filled it, and
+ * when a snapshot comes back to it, only those rows are copied into it. Each
+ * publish costs about as much as the rows that changed, however tall the board is.
+ */
+final class SnapshotBuffer {
+
+    private final AtomicReference<Snapshot> ready;
+    private Snapshot back;     // Only used by the game thread.
+    private Snapshot front;    // Only used by the renderer.
+
+    // The rows of each snapshot that are older than the board, only used by the game thread.
+    private final Snapshot[] snapshots;
+    private final int[] staleTop;
+    private final int[] staleBottom;
+
+    private final int rows;
+    private final int sizeOfPiece;
+    private long version = 0;
+
+    /**
+     * Construct the buffer and publish the first snapshot of the board.
+     * @param gameBoard     the board to take snapshots of
+     */
+    SnapshotBuffer (GameBoard gameBoard) {
+        rows = gameBoard.getRows();
+        int columns = gameBoard.getColumns();
+        int previews = gameBoard.getPreview().getDepth();
+        sizeOfPiece = gameBoard.getSizeOfPiece();
+        back = new Snapshot(rows, columns, previews);
+        front = new Snapshot(rows, columns, previews);
+        ready = new AtomicReference<>(new Snapshot(rows, columns, previews));
+
+        snapshots = new Snapshot[] {back, front, ready.get()};
+        staleTop = new int[] {0, rows, 0};
+        staleBottom = new int[] {rows - 1, -1, rows - 1};
+
+        gameBoard.copyTo(front);
+        publish(gameBoard, null);
+    }
+
+    /**
+     * Takes a snapshot of the board and makes it the newest one. Must only be
+     * called from the game thread.
+     * @param gameBoard     the board to take a snapshot of
+     * @param region        the part of the board that has changed since the last
+     *                      publish, as given by GameBoard.takeDirtyRegion(), or null
+     *                      if no Squares have changed
+     */
+    void publish (GameBoard gameBoard, Rectangle region) {
+        if (region != null) {
+            int top = region.y / sizeOfPiece;
+            int bottom = (region.y + region.height - 1) / sizeOfPiece;
+            for (int i = 0; i < snapshots.length; i++) {
+                staleTop[i] = Math.min(staleTop[i], top);
+                staleBottom[i] = Math.max(staleBottom[i], bottom);
+            }
+        }
+
+        int i = indexOf(back);
+        gameBoard.copyTo(back, staleTop[i], staleBottom[i]);
+        staleTop[i] = rows;
+        staleBottom[i] = -1;
+
+        back.version = ++version;
+        back = ready.getAndSet(back);
+    }
+
+    private int indexOf (Snapshot snapshot) {
+        for (int i = 0; i < snapshots.length; i++) {
+            if (snapshots[i] == snapshot) return i;
+        }
+        throw new IllegalStateException("Not a snapshot of this buffer");
+    }
+
+    /**
+     * Gets the newest snapshot. Must only be called from the renderer, and the
+     * snapshot may only be read until the next call.
+     * @return      the newest snapshot that has been published
+     */
+    Snapshot latest () {
+        if (ready.get().version > front.version) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+
+}
@@ -0,0 +1,151 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-rendered images of the squares and the background of the game board.
+ * <br/>
+ * Drawing a bevelled Square takes five antialiased polygons in five colors. Rather
+ * than doing that for every Square of every frame, each of the seven colors, and the
+ * grey of garbage, is drawn once into a small image, and painting a Square is a single
+ * image copy. The images for a size are built the first time that size is asked for
+ * and are shared by every board, as they are never changed after they are built.
+ */
+final class Sprites {
+
+    private static final int COLORS = 8; // The seven shapes, and garbage.
+    private static final ConcurrentHashMap<Integer, Sprites> CACHE = new ConcurrentHashMap<>();
+
+    private final int size;
+    private final BufferedImage[] tiles = new BufferedImage[COLORS];
+    private final BufferedImage[] ghosts = new BufferedImage[COLORS];
+
+    /**
+     * @param size      the size of each square
+     * @return          the images for squares of that size
+     */
+    static Sprites forSize (int size) {
+        return CACHE.computeIfAbsent(size, Sprites::new);
+    }
+
+    private Sprites (int size) {
+        this.size = size;
+        for (int i = 0; i < COLORS; i++) {
+            // Garbage is grey, the shapes are colored by their hue.
+            float saturation = -1 - i == GameBoard.GARBAGE ? 0 : 1;
+            tiles[i] = createTile(hue(-1 - i), saturation);
+            ghosts[i] = createGhost(hue(-1 - i));
+        }
+    }
+
+    /**
+     * @param color     the color of a piece, from -1 to -7, or GameBoard.GARBAGE
+     * @return          the image of a Square of that color
+     */
+    BufferedImage getTile (int color) {
+        return tiles[Math.floorMod(-1 - color, COLORS)];
+    }
+
+    /**
+     * @param color     the color of a piece, from -1 to -7
+     * @return          the translucent image of a Square of that color, for the ghost piece
+     */
+    BufferedImage getGhost (int color) {
+        return ghosts[Math.floorMod(-1 - color, COLORS)];
+    }
+
+    /**
+     * @param color     the color of a piece, from -1 to -7
+     * @return          the hue based on the piece
+     */
+    static float hue (int color) {
+        if (color < -7 || color > -1) return 0.0f;
+        return (-1 - color) * 0.15f;
+    }
+
+    /**
+     * Draws the checkerboard behind the pieces.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     * @return          the image of the empty board
+     */
+    BufferedImage createBackground (int rows, int columns) {
+        BufferedImage image = new BufferedImage(columns * size, rows * size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        Color dark = new Color(20, 20, 20);
+        Color light = new Color(24, 24, 24);
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                graphics.setColor((column + row) % 2 == 0 ? dark : light);
+                graphics.fillRect(column * size, row * size, size, size);
+            }
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    private BufferedImage createGhost (float hue) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        Color color = Color.getHSBColor(hue, 1, 1);
+
+        graphics.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 40));
+        graphics.fillRect(0, 0, size, size);
+        graphics.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), 160));
+        graphics.drawRect(0, 0, size - 1, size - 1);
+
+        graphics.dispose();
+        return image;
+    }
+
+    private BufferedImage createTile (float hue, float saturation) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // The edges of the polygons are blended with what is behind them.
+        graphics.setColor(new Color(20, 20, 20));
+        graphics.fillRect(0, 0, size, size);
+
+        int padding = size/6;
+
+        // Outer Square.
+        int x1 = 0;
+        int x2 = size;
+        int y1 = 0;
+        int y2 = size;
+
+        // Inner square.
+        int x3 = x1 + padding;
+        int x4 = x1 + (size - padding);
+        int y3 = y1 + padding;
+        int y4 = y1 + (size - padding);
+
+        // Left (bright)
+        graphics.setColor(Color.getHSBColor(hue,0.6f * saturation,1));
+        graphics.fillPolygon(new int[]{y1, y3, y3, y1}, new int[]{x1, x3, x4, x2}, 4);
+
+        // Right (dark)
+        graphics.setColor(Color.getHSBColor(hue,saturation,0.6f));
+        graphics.fillPolygon(new int[]{y2, y4, y4, y2}, new int[]{x1, x3, x4, x2}, 4);
+
+        // Top (brightest)
+        graphics.setColor(Color.getHSBColor(hue,0.4f * saturation,1));
+        graphics.fillPolygon(new int[]{y1, y3, y4, y2}, new int[]{x1, x3, x3, x1}, 4);
+
+        // Bottom (darkest)
+        graphics.setColor(Color.getHSBColor(hue,saturation,0.2f));
+        graphics.fillPolygon(new int[]{y1, y3, y4, y2}, new int[]{x2, x4, x4, x2}, 4);
+
+        // Fill center.
+        graphics.setColor(Color.getHSBColor(hue,saturation,1));
+        graphics.fillPolygon(new int[]{y3, y3, y4, y4}, new int[]{x3, x4, x4, x3}, 4);
+
+        graphics.dispose();
+        return image;
+    }
+
+}
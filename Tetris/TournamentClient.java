@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Puts load on a TournamentServer by playing many games at once with random inputs.
+ * <br/>
+ * Like the server, the client runs every connection on one thread around one
+ * selector. Each connection sends an input at a fixed rate and reads the messages
+ * of the server, and a connection whose game is over connects again. When the
+ * server cannot be reached, connecting is tried again after a delay that doubles
+ * each time, and the client gives up after MAX_RETRIES failures in a row. At the end
+ * it prints how many messages arrived and how long an input took to be answered
+ * by the next STATE message.
+ */
+class TournamentClient {
+
+    private static final int INPUTS = Simulator.Input.values().length;
+
+    /**
+     * The number of times in a row connecting may fail before the client gives up.
+     */
+    static final int MAX_RETRIES = 10;
+
+    private static final long RETRY_DELAY = 10_000_000L;        // Nanoseconds, doubled each failure.
+    private static final long MAX_RETRY_DELAY = 1_000_000_000L;
+
+    private final SocketAddress address;
+    private final SplittableRandom random;
+    private final Selector selector;
+    private final List<Connection> connections = new ArrayList<>();
+    private final ByteBuffer input = ByteBuffer.allocateDirect(1);
+
+    private final Histogram latency = new Histogram();
+    private long sent = 0;
+    private long states = 0;
+    private long rows = 0;
+    private long bytes = 0;
+    private long games = 0;
+    private long errors = 0;
+
+    private int failures = 0;       // Connections in a row that could not be made.
+    private long retryAt;           // No connection is made before this time.
+
+    /**
+     * @param address   the address of the server
+     * @param seed      the seed of the inputs
+     * @throws IOException  if a selector cannot be opened
+     */
+    TournamentClient (SocketAddress address, long seed) throws IOException {
+        this.address = address;
+        this.random = new SplittableRandom(seed);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Opens new connections to the server until there are as many as wanted. When
+     * the server is not keeping up with accepting them, the rest are tried again
+     * the next time, once the delay after the last failure has passed.
+     * @param clients   the number of connections wanted
+     * @throws IOException  if connecting has failed too many times in a row
+     */
+    private void connect (int clients) throws IOException {
+        if (failures > 0 && System.nanoTime() - retryAt < 0) return;
+
+        while (connections.size() < clients) {
+            SocketChannel channel = address instanceof UnixDomainSocketAddress
+                    ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+            if (address instanceof InetSocketAddress) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            boolean connected;
+            try {
+                connected = channel.connect(address);
+            } catch (IOException ex) {
+                channel.close();
+                failed(ex);
+                return;
+            }
+            if (connected) failures = 0;
+
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector,
+                    connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection);
+            connections.add(connection);
+        }
+    }
+
+    /**
+     * Puts off connecting again, for longer after each failure in a row.
+     * @param ex            why the connection could not be made
+     * @throws IOException  if connecting has failed MAX_RETRIES times in a row
+     */
+    private void failed (IOException ex) throws IOException {
+        errors++;
+        // The other connections that were opened at the same time fail together.
+        if (failures > 0 && System.nanoTime() - retryAt < 0) return;
+        if (++failures >= MAX_RETRIES) {
+            throw new IOException("Could not connect to " + address + " after " + failures + " tries", ex);
+        }
+        retryAt = System.nanoTime() + Math.min(MAX_RETRY_DELAY, RETRY_DELAY << (failures - 1));
+    }
+
+    /**
+     * Plays games until the time is up.
+     * @param clients           the number of connections to keep open
+     * @param seconds           how long to play
+     * @param inputsPerSecond   how many inputs each connection sends each second
+     * @throws IOException      if the selector fails, or the server cannot be reached
+     */
+    void run (int clients, double seconds, int inputsPerSecond) throws IOException {
+        connect(clients);
+
+        long period = 1_000_000_000L / inputsPerSecond;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1_000_000_000L);
+        long nextInput = start;
+
+        while (System.nanoTime() - end < 0) {
+            long wait = nextInput - System.nanoTime();
+            if (wait > 0) {
+                selector.select(Math.max(1, wait / 1_000_000));
+            } else {
+                selector.selectNow();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (key.isConnectable()) {
+                    try {
+                        if (connection.channel.finishConnect()) {
+                            key.interestOps(SelectionKey.OP_READ);
+                            failures = 0;
+                        }
+                    } catch (IOException ex) {
+                        connection.close();
+                        failed(ex);
+                        continue;
+                    }
+                }
+                try {
+                    if (key.isValid() && key.isReadable()) connection.read();
+                } catch (IOException ex) {
+                    errors++;
+                    connection.close();
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now - nextInput >= 0) {
+                for (Connection connection : connections) {
+                    try {
+                        connection.send(now);
+                    } catch (IOException ex) {
+                        errors++;
+                        connection.close();
+                    }
+                }
+                nextInput += period;
+                if (now - nextInput >= 0) nextInput = now + period;
+            }
+
+            // Keep the number of games up, as finished ones are closed by the server.
+            connections.removeIf(connection -> connection.closed);
+            connect(clients);
+        }
+
+        for (Connection connection : connections) connection.close();
+        selector.close();
+    }
+
+    public String toString () {
+        return String.format("%d inputs, %d states, %d rows, %d bytes, %d games finished, %d errors%n"
+                        + "input to state latency: mean %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                sent, states, rows, bytes, games, errors,
+                latency.getMean() / 1e6, latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6);
+    }
+
+    /**
+     * One game on the server.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(1 << 12);
+        private boolean welcomed = false;
+        private boolean closed = false;
+        private long waitingSince = 0;   // When the oldest unanswered input was sent, or 0.
+
+        Connection (SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void send (long now) throws IOException {
+            if (!welcomed || closed) return;
+
+            input.clear();
+            input.put((byte) random.nextInt(INPUTS));
+            input.flip();
+            if (channel.write(input) == 1) {
+                sent++;
+                if (waitingSince == 0) waitingSince = now;
+            }
+        }
+
+        void read () throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                close();
+                return;
+            }
+            bytes += read;
+
+            in.flip();
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (in.remaining() < Integer.BYTES + length) {
+                    // Make room for a message larger than the buffer.
+                    if (Integer.BYTES + length > in.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocate(Integer.BYTES + length);
+                        larger.put(in);
+                        larger.flip();
+                        in = larger;
+                    }
+                    break;
+                }
+
+                int next = in.position() + Integer.BYTES + length;
+                in.getInt();
+                handle(in.get());
+                in.position(next);
+            }
+            in.compact();
+        }
+
+        private void handle (byte type) throws IOException {
+            if (type == TournamentServer.WELCOME) {
+                if (in.getInt() != TournamentServer.MAGIC) throw new IOException("Not a tournament server");
+                welcomed = true;
+                return;
+            }
+            if (type != TournamentServer.STATE) throw new IOException("Unknown message: " + type);
+
+            states++;
+            if (waitingSince != 0) {
+                latency.record(System.nanoTime() - waitingSince);
+                waitingSince = 0;
+            }
+
+            in.getLong();           // Tick.
+            in.position(in.position() + 3 + Short.BYTES + 2 * Integer.BYTES);
+            boolean over = in.get() != 0;
+            int changed = in.getShort();
+            in.position(in.position() + changed * (Short.BYTES + Long.BYTES));
+            rows += changed;
+
+            if (over) games++;
+        }
+
+        void close () {
+            if (closed) return;
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Nothing more can be done with it.
+            }
+        }
+
+    }
+
+    /**
+     * Connects many clients to a server and plays random games for a while.
+     * @param args  optionally, the port or unix:PATH of the server, the number of
+     *              connections, the number of seconds and the inputs per second of
+     *              each connection
+     * @throws IOException  if the client fails, or cannot reach the server
+     */
+    public static void main (String[] args) throws IOException {
+        SocketAddress address = TournamentServer.address(args.length > 0 ? args[0] : "7777");
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        int inputsPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        TournamentClient client = new TournamentClient(address, 0);
+        long start = System.nanoTime();
+        try {
+            client.run(clients, seconds, inputsPerSecond);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage() + ": " + ex.getCause());
+            System.exit(1);
+        }
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.println(client);
+        System.out.printf("%d connections, %.1f seconds, %.0f states per second%n",
+                clients, elapsed, client.states / elapsed);
+    }
+
+}
@@ -0,0 +1,399 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hosts a game for every client that connects, so that bots can play matches.
+ * <br/>
+ * Everything runs on one thread around one selector, so thousands of clients are
+ * served without a thread each. Every game is dealt the same pieces, from the seed
+ * of the server, so the clients play the same match.
+ * <br/>
+ * A client sends one byte per input, the ordinal of a Simulator.Input. The inputs
+ * are read as they arrive and applied on the next tick, at most INPUTS_PER_TICK of
+ * them per client, and pieces fall by gravity as they do in the Window, faster as
+ * each game goes up a level, see GravityTable. After each
+ * tick every client whose game changed is sent one STATE message with everything
+ * that changed since the last message it was sent. A client that has not read its
+ * last message yet is skipped, and gets the changes of several ticks at once when
+ * it catches up.
+ * <br/>
+ * Every message starts with its length as an int, not counting the length itself,
+ * and then its type as a byte. All numbers are big-endian.
+ * <ul>
+ *     <li>WELCOME: the MAGIC int, the rows and columns as ints, the seed as a long and
+ *     the mode of the generator as a byte.</li>
+ *     <li>STATE: the tick as a long; the shape, rotation and x of the dropping piece as
+ *     bytes and its y as a short; the score and lines as ints; a byte that is 1 once
+ *     the game is over; the number of changed rows as a short, and then each of them
+ *     as a short row and a long mask.</li>
+ * </ul>
+ * When a game is over its last state is sent and the connection is closed.
+ */
+class TournamentServer {
+
+    static final int MAGIC = 0x54545331; // "TTS1"
+
+    static final byte WELCOME = 0;
+    static final byte STATE = 1;
+
+    static final int MAX_ROWS = Short.MAX_VALUE;
+
+    private static final int INPUTS_PER_TICK = 16;
+    private static final int MAX_CATCH_UP = 5;
+    private static final Simulator.Input[] INPUTS = Simulator.Input.values();
+
+    private final int rows;
+    private final int columns;
+    private final long seed;
+    private final PieceGenerator.Mode mode;
+    private final long tickPeriod;
+    private final GravityTable gravity;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Session> sessions = new ArrayList<>();
+
+    private long tick = 0;
+    private long inputs = 0;
+    private long messages = 0;
+    private long bytes = 0;
+    private long games = 0;
+
+    /**
+     * Starts listening for clients. Nothing is served until the server is run.
+     * @param address           the address to listen on, a local TCP port or a Unix domain socket
+     * @param rows              the number of rows of each board
+     * @param columns           the number of columns of each board
+     * @param seed              the seed of the pieces of every game
+     * @param mode              the way the pieces are dealt
+     * @param ticksPerSecond    the rate of the ticks
+     * @param gravity           how fast the pieces fall on each level, at the rate of the ticks
+     * @throws IOException      if the address cannot be listened on
+     */
+    TournamentServer (SocketAddress address, int rows, int columns, long seed, PieceGenerator.Mode mode,
+                      int ticksPerSecond, GravityTable gravity) throws IOException {
+        if (rows > MAX_ROWS) throw new IllegalArgumentException("Too many rows: " + rows);
+
+        this.rows = rows;
+        this.columns = columns;
+        this.seed = seed;
+        this.mode = mode;
+        this.tickPeriod = 1_000_000_000L / ticksPerSecond;
+        this.gravity = gravity;
+
+        selector = Selector.open();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        }
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Serves clients until the thread is interrupted.
+     * @throws IOException  if the selector fails
+     */
+    void run () throws IOException {
+        long nextTick = System.nanoTime();
+        long nextReport = nextTick + 5_000_000_000L;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                selector.select(Math.max(1, wait / 1_000_000));
+            } else {
+                selector.selectNow();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                handle(key);
+            }
+
+            long now = System.nanoTime();
+            if (now - nextTick >= 0) {
+                // Beyond a few missed ticks, the missed ones are dropped.
+                if (now - nextTick >= MAX_CATCH_UP * tickPeriod) {
+                    nextTick += (now - nextTick) / tickPeriod * tickPeriod;
+                }
+                tick();
+                nextTick += tickPeriod;
+            }
+
+            if (now - nextReport >= 0) {
+                System.out.println(this);
+                nextReport += 5_000_000_000L;
+            }
+        }
+    }
+
+    private void handle (SelectionKey key) throws IOException {
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable()) session.read();
+            if (key.isValid() && key.isWritable()) session.flush();
+        } catch (IOException ex) {
+            session.close();
+        }
+    }
+
+    private void accept () throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+            games++;
+            try {
+                session.welcome();
+            } catch (IOException ex) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the inputs that have arrived, lets every piece fall, and sends the
+     * changes to the clients.
+     */
+    private void tick () {
+        for (int i = 0; i < sessions.size(); i++) {
+            Session session = sessions.get(i);
+            try {
+                session.tick();
+            } catch (IOException ex) {
+                session.close();
+            }
+        }
+        sessions.removeIf(session -> session.closed);
+        tick++;
+    }
+
+    public String toString () {
+        return String.format("tick %d, %d clients, %d games, %d inputs, %d messages, %d bytes sent",
+                tick, sessions.size(), games, inputs, messages, bytes);
+    }
+
+    /**
+     * The game of one client.
+     */
+    private final class Session {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        private final Simulator simulator;
+        private final GameBoard gameBoard;
+
+        private final ByteBuffer in = ByteBuffer.allocateDirect(256);
+        private final ByteBuffer out;
+
+        // What the client was last sent, to find what has changed.
+        private final long[] sent;
+        private Piece.Shape sentShape;
+        private int sentRotation, sentX, sentY;
+        private int sentScore = -1;
+
+        private boolean finished = false;   // The state of the finished game has been written.
+        private boolean closed = false;
+
+        Session (SocketChannel channel) {
+            this.channel = channel;
+            gameBoard = new GameBoard(rows, columns, mode.create(seed));
+            simulator = new Simulator(gameBoard, gravity);
+            sent = new long[rows];
+
+            // Large enough for a message with every row in it.
+            out = ByteBuffer.allocateDirect(64 + rows * (Short.BYTES + Long.BYTES));
+        }
+
+        void welcome () throws IOException {
+            out.putInt(1 + 4 * 3 + 8 + 1);
+            out.put(WELCOME);
+            out.putInt(MAGIC);
+            out.putInt(rows);
+            out.putInt(columns);
+            out.putLong(seed);
+            out.put((byte) mode.ordinal());
+            out.flip();
+            flush();
+        }
+
+        /**
+         * Reads the inputs that have arrived. When the buffer is full, reading stops
+         * until the inputs have been applied, which pushes back on the client.
+         */
+        void read () throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            if (!in.hasRemaining()) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+
+        void tick () throws IOException {
+            if (closed) return;
+
+            in.flip();
+            int applied = 0;
+            while (in.hasRemaining() && applied < INPUTS_PER_TICK && !simulator.isGameOver()) {
+                int input = in.get();
+                if (input >= 0 && input < INPUTS.length) simulator.apply(INPUTS[input]);
+                applied++;
+            }
+            in.compact();
+            inputs += applied;
+            if (!closed) key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+
+            simulator.tick();
+
+            // A client that is still reading its last message gets these changes later.
+            if (out.hasRemaining()) return;
+            out.clear();
+            if (!writeState()) {
+                out.limit(0);
+                return;
+            }
+            out.flip();
+            flush();
+        }
+
+        /**
+         * Writes the changes since the last message into the buffer.
+         * @return      false if nothing has changed
+         */
+        private boolean writeState () {
+            Piece piece = gameBoard.getPiece();
+            boolean over = gameBoard.isGameOver();
+
+            out.position(Integer.BYTES);
+            out.put(STATE);
+            out.putLong(tick);
+            out.put((byte) piece.getShape().ordinal());
+            out.put((byte) piece.getRotationIndex());
+            out.put((byte) piece.getX());
+            out.putShort((short) piece.getY());
+            out.putInt(gameBoard.getScore());
+            out.putInt(gameBoard.getLines());
+            out.put((byte) (over ? 1 : 0));
+
+            int countAt = out.position();
+            out.putShort((short) 0);
+            int changed = 0;
+            for (int row = 0; row < rows; row++) {
+                long mask = gameBoard.getMask(row);
+                if (mask == sent[row]) continue;
+                sent[row] = mask;
+                out.putShort((short) row);
+                out.putLong(mask);
+                changed++;
+            }
+
+            boolean pieceChanged = piece.getShape() != sentShape || piece.getRotationIndex() != sentRotation
+                    || piece.getX() != sentX || piece.getY() != sentY || gameBoard.getScore() != sentScore;
+            if (changed == 0 && !pieceChanged && !over) return false;
+
+            sentShape = piece.getShape();
+            sentRotation = piece.getRotationIndex();
+            sentX = piece.getX();
+            sentY = piece.getY();
+            sentScore = gameBoard.getScore();
+            finished = over;
+
+            out.putShort(countAt, (short) changed);
+            out.putInt(0, out.position() - Integer.BYTES);
+            messages++;
+            return true;
+        }
+
+        /**
+         * Writes as much of the buffer as the socket takes, and waits to be told it
+         * can write when it does not take all of it.
+         */
+        void flush () throws IOException {
+            bytes += channel.write(out);
+
+            if (out.hasRemaining()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (finished) close(); // The last state has been sent.
+            }
+        }
+
+        void close () {
+            if (closed) return;
+            closed = true;
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Nothing more can be done with it.
+            }
+        }
+
+    }
+
+    /**
+     * Parses an address: a port on the loopback interface, or unix:PATH for a Unix
+     * domain socket.
+     * @param address   the address
+     * @return          the socket address
+     */
+    static SocketAddress address (String address) {
+        if (address.startsWith("unix:")) return UnixDomainSocketAddress.of(Path.of(address.substring(5)));
+        return new InetSocketAddress("127.0.0.1", Integer.parseInt(address));
+    }
+
+    /**
+     * Runs a server until it is killed.
+     * @param args  optionally, the port or unix:PATH to listen on, the seed, the mode
+     *              of the generator (uniform or bag), and the rows and columns
+     * @throws IOException  if the server cannot listen
+     */
+    public static void main (String[] args) throws IOException {
+        SocketAddress address = address(args.length > 0 ? args[0] : "7777");
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        PieceGenerator.Mode mode = args.length > 2
+                ? PieceGenerator.Mode.valueOf(args[2].toUpperCase()) : PieceGenerator.Mode.BAG;
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : 18;
+        int columns = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        TournamentServer server = new TournamentServer(address, rows, columns, seed, mode, 60,
+                GravityTable.guideline(60));
+        System.out.println("Listening on " + address);
+        server.run();
+    }
+
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of search results, keyed by Zobrist hashes.
+ * <br/>
+ * The table is open-addressed in buckets of two entries. The first entry of a
+ * bucket keeps the result that was searched deepest, and the second entry always
+ * takes the newest result that did not replace the first. The table never grows,
+ * so old results are simply overwritten.
+ * <br/>
+ * The table can be shared by many threads without locks. Each entry is two longs:
+ * the data, which packs the value and the depth, and a check, which is the key
+ * XOR the data. A reader only accepts an entry whose check matches its key and
+ * data, so an entry that was torn by two writers at once reads as a miss.
+ */
+final class TranspositionTable {
+
+    private final long[] checks;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * Construct an empty table.
+     * @param entries   the number of entries, rounded up to a power of two
+     */
+    TranspositionTable (int entries) {
+        int size = Integer.highestOneBit(Math.max(2, entries) - 1) << 1;
+        checks = new long[size];
+        data = new long[size];
+        mask = size - 2;
+    }
+
+    /**
+     * Looks up a value.
+     * @param key   the hash of the position
+     * @param depth the depth the value must have been searched to
+     * @return      the value, or NaN if there is none for the key searched at least that deep
+     */
+    double get (long key, int depth) {
+        int bucket = (int) key & mask;
+        for (int index = bucket; index < bucket + 2; index++) {
+            long entry = data[index];
+            if (entry != 0 && (checks[index] ^ entry) == key && depthOf(entry) >= depth) {
+                return Float.intBitsToFloat((int) (entry >>> 32));
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Stores a value, overwriting an older one if the bucket is full.
+     * @param key       the hash of the position
+     * @param depth     the depth the value was searched to, from 0 to 254
+     * @param value     the value, which is stored as a float
+     */
+    void put (long key, int depth, double value) {
+        // The depth is stored plus one, so that no entry is ever zero.
+        long entry = (long) Float.floatToIntBits((float) value) << 32 | ((depth + 1) & 0xFF);
+        int bucket = (int) key & mask;
+
+        long first = data[bucket];
+        boolean same = (checks[bucket] ^ first) == key;
+        if (first == 0 || same || depthOf(first) <= depth) {
+            data[bucket] = entry;
+            checks[bucket] = key ^ entry;
+        } else {
+            data[bucket + 1] = entry;
+            checks[bucket + 1] = key ^ entry;
+        }
+    }
+
+    /**
+     * Empties the table.
+     */
+    void clear () {
+        Arrays.fill(checks, 0);
+        Arrays.fill(data, 0);
+    }
+
+    private static int depthOf (long entry) {
+        return (int) (entry & 0xFF) - 1;
+    }
+
+}
@@ -0,0 +1,264 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Plays a versus game between bots, where clearing lines sends garbage rows to an
+ * opponent.
+ * <br/>
+ * The room runs in ticks. On every tick each player that is still alive places one
+ * piece, and attacks an opponent with the number of garbage rows in ATTACK for the
+ * lines it cleared. Garbage that was sent to a player is first cancelled by its own
+ * attack, and the rest is added to the bottom of its board, with a hole in a random
+ * column. The last player standing wins.
+ * <br/>
+ * The players are shared out over a number of threads. Each player posts its attack
+ * to a mailbox slot that only it writes, and the threads wait for each other at the
+ * end of every tick, so the attacks of one tick are read on the next tick. Every
+ * choice that is random is drawn from the player's own generator, and attacks are
+ * added up in the order of the players, so a room plays out the same way for the
+ * same seed no matter how many threads it runs on.
+ */
+class VersusRoom {
+
+    /**
+     * The garbage rows sent for clearing 0, 1, 2, 3 and 4 lines with one piece.
+     */
+    static final int[] ATTACK = {0, 0, 1, 2, 4};
+
+    // A mailbox slot holds whether the player is alive, the target and the rows.
+    private static final long ALIVE = 1L << 62;
+
+    private final int rows;
+    private final int columns;
+    private final Bot bot;
+    private final Player[] players;
+
+    // Two slots per player, one for the attacks of even ticks and one for odd ticks.
+    private final AtomicLongArray mailboxes;
+
+    private long ticks = 0;
+    private int winner = -1;
+
+    /**
+     * Construct a room where every player is dealt the same pieces.
+     * @param players   the number of players, at least 2
+     * @param rows      the number of rows of each board
+     * @param columns   the number of columns of each board
+     * @param seed      the seed of the pieces and of every random choice
+     * @param bot       the bot that plays for every player
+     */
+    VersusRoom (int players, int rows, int columns, long seed, Bot bot) {
+        if (players < 2) throw new IllegalArgumentException("A room needs at least 2 players: " + players);
+
+        this.rows = rows;
+        this.columns = columns;
+        this.bot = bot;
+        this.players = new Player[players];
+        this.mailboxes = new AtomicLongArray(2 * players);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < players; i++) {
+            this.players[i] = new Player(i, PieceGenerator.bag(seed), random.split());
+            mailboxes.set(i, ALIVE);
+        }
+    }
+
+    /**
+     * Plays the room until one player is left.
+     * @param threads   the number of threads to play on
+     * @param maxTicks  the most ticks to play, after which the room is a draw
+     * @return          the index of the winner, or -1 for a draw
+     * @throws InterruptedException     if interrupted while waiting for the threads
+     */
+    int play (int threads, long maxTicks) throws InterruptedException {
+        threads = Math.max(1, Math.min(threads, players.length));
+        Phaser phaser = new Phaser(threads);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            int count = threads;
+            workers[t] = new Thread(() -> work(worker, count, phaser, maxTicks), "Versus " + worker);
+            workers[t].start();
+        }
+        for (Thread thread : workers) thread.join();
+
+        return winner;
+    }
+
+    /**
+     * Plays the players of one thread, a tick at a time, until the room is over.
+     */
+    private void work (int worker, int threads, Phaser phaser, long maxTicks) {
+        for (long tick = 1; ; tick++) {
+            for (int player = worker; player < players.length; player += threads) {
+                players[player].tick(tick);
+            }
+            phaser.arriveAndAwaitAdvance();
+
+            // Every thread reads the same slots here, so they all stop on the same tick.
+            int slot = (int) (tick & 1) * players.length;
+            int alive = 0, last = -1;
+            for (int player = 0; player < players.length; player++) {
+                if ((mailboxes.get(slot + player) & ALIVE) != 0) {
+                    alive++;
+                    last = player;
+                }
+            }
+
+            if (alive <= 1 || tick >= maxTicks) {
+                if (worker == 0) {
+                    ticks = tick;
+                    winner = alive == 1 ? last : -1;
+                }
+                return;
+            }
+        }
+    }
+
+    long getTicks () {
+        return ticks;
+    }
+
+    /**
+     * @param player    the index of a player
+     * @return          the simulator of the player's game
+     */
+    Simulator getSimulator (int player) {
+        return players[player].simulator;
+    }
+
+    /**
+     * @param player    the index of a player
+     * @return          the number of garbage rows the player has sent
+     */
+    int getSent (int player) {
+        return players[player].sent;
+    }
+
+    /**
+     * @param player    the index of a player
+     * @return          the number of garbage rows that were added to the player's board
+     */
+    int getReceived (int player) {
+        return players[player].received;
+    }
+
+    /**
+     * @return      a hash of the boards of every player, which is the same each time
+     *              a room is played with the same seed
+     */
+    long getHash () {
+        long hash = ticks * 31 + winner;
+        for (Player player : players) {
+            hash = hash * 31 + player.gameBoard.getBoardHash();
+        }
+        return hash;
+    }
+
+    /**
+     * One board in the room, only ever played by one thread.
+     */
+    private final class Player {
+
+        private final int index;
+        private final GameBoard gameBoard;
+        private final Simulator simulator;
+        private final SplittableRandom random;
+        private final int[] opponents;
+
+        private int sent = 0;
+        private int received = 0;
+
+        Player (int index, PieceGenerator generator, SplittableRandom random) {
+            this.index = index;
+            this.gameBoard = new GameBoard(rows, columns, generator);
+            this.simulator = new Simulator(gameBoard);
+            this.random = random;
+            this.opponents = new int[players.length];
+        }
+
+        void tick (long tick) {
+            int read = (int) ((tick - 1) & 1) * players.length;
+            int write = (int) (tick & 1) * players.length;
+
+            // The attacks of the last tick, in the order of the players.
+            int incoming = 0;
+            int alive = 0;
+            for (int player = 0; player < players.length; player++) {
+                long mail = mailboxes.get(read + player);
+                if ((mail & ALIVE) == 0 || player == index) continue;
+
+                opponents[alive++] = player;
+                if ((int) (mail >>> 16 & 0xFFFF) == index) incoming += (int) (mail & 0xFFFF);
+            }
+
+            if (simulator.isGameOver()) {
+                mailboxes.set(write + index, 0);
+                return;
+            }
+
+            int attack = 0;
+            if (bot.play(simulator) != Simulator.Result.MOVED) {
+                attack = ATTACK[Math.min(gameBoard.getLastCleared(), ATTACK.length - 1)];
+            }
+
+            int cancelled = Math.min(attack, incoming);
+            attack -= cancelled;
+            incoming -= cancelled;
+
+            if (incoming > 0 && !gameBoard.isGameOver()) {
+                gameBoard.addGarbage(incoming, random.nextInt(columns));
+                received += incoming;
+            }
+
+            long mail = gameBoard.isGameOver() ? 0 : ALIVE;
+            if (attack > 0 && alive > 0) {
+                int target = opponents[random.nextInt(alive)];
+                mail |= (long) target << 16 | Math.min(attack, 0xFFFF);
+                sent += attack;
+            }
+            mailboxes.set(write + index, mail);
+        }
+
+    }
+
+    /**
+     * Plays versus rooms between bots and prints who won and how fast the pieces
+     * were placed.
+     * @param args  optionally, the number of players, the number of threads, the
+     *              seed and the number of rooms
+     * @throws InterruptedException     if interrupted
+     */
+    public static void main (String[] args) throws InterruptedException {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int rooms = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        long maxTicks = 100_000;
+
+        Bot bot = new Bot();
+        long pieces = 0;
+        long start = System.nanoTime();
+
+        for (int room = 0; room < rooms; room++) {
+            VersusRoom versus = new VersusRoom(players, 18, 10, seed + room, bot);
+            int winner = versus.play(threads, maxTicks);
+
+            int sent = 0;
+            for (int player = 0; player < players; player++) {
+                pieces += versus.getSimulator(player).getPieces();
+                sent += versus.getSent(player);
+            }
+            System.out.printf("Room %d: %s after %d ticks, %d garbage rows sent, hash %016x%n",
+                    room, winner < 0 ? "draw" : "player " + winner + " won", versus.getTicks(), sent,
+                    versus.getHash());
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("%d rooms of %d players on %d threads, %.2f seconds, %.0f pieces per second%n",
+                rooms, players, threads, elapsed, pieces / elapsed);
+    }
+
+}
@@ -2,40 +2,135 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-
-import static java.lang.Thread.sleep;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Runs a game of Tetris.
+ * Runs a game of Tetris. The game itself is played by a Simulator, and this class
+ * only adds the clock, the keyboard and the display.
+ * <br/>
+ * Only the game loop changes the game. Key presses are put on an InputQueue by the
+ * event dispatch thread and applied by the loop at the start of its next tick. When
+ * the board has changed, the loop publishes a Snapshot of it, and the panel paints
+ * the newest snapshot, so painting never reads the board while it is changing.
+ * <br/>
+ * A game can be recorded to a replay file, and a replay file can be watched at the
+ * speed it was played at instead of playing a game.
+ * <br/>
+ * How long each tick and frame takes is recorded in the Metrics, which are
+ * registered with JMX and can be written to a CSV file every second.
  */
 public class Window extends JFrame {
 
     private Engine engine;
-    private volatile GameBoard gameBoard;
-    private static final int ROWS = 18;
-    private static final int COLUMNS = 10;
+    private Preview preview;
+    private GameLoop loop;
+    private Thread loopThread;
+    private final InputQueue inputs = new InputQueue(64);
+    private final InputQueue.Consumer applyInput = this::apply;
+    private GameBoard gameBoard;
+    private Simulator simulator;
+    private SnapshotBuffer snapshots;
+    private ReplayWriter recorder;
+    private ReplayPlayer player;
+    private static int rows = 18;
+    private static int columns = 10;
     private static int sizeOfPieces = 35;
+    private static int previews = GameBoard.PREVIEWS;
+    private static Path recordTo;
+    private static Path replayFrom;
+    private static Path metricsTo;
+    private final Metrics metrics = Metrics.get();
+
+    private static final int TICKS_PER_SECOND = 60;
+    private static final int FRAMES_PER_SECOND = 60;
+    private static final int INPUTS_PER_TICK = 16;
+    private static final int KEYFRAME_INTERVAL = 50; // Pieces.
+    private static final long MAX_BOARD_PIXELS = 1L << 24;
+    private static final int MAX_PREVIEWS = 16;
+
+    private static GravityTable gravity = GravityTable.guideline(TICKS_PER_SECOND);
+
+    private Window() throws IOException {
+        metrics.register();
+        metrics.countAllocations();
+        if (metricsTo != null) metrics.dump(metricsTo, 1, TimeUnit.SECONDS);
 
-    private Window() {
         engine = createEngine();
         setWindowProperties();
         startGame();
     }
 
-    private Engine createEngine () {
+    private Engine createEngine () throws IOException {
+        if (replayFrom != null) {
+            player = new ReplayPlayer(replayFrom, sizeOfPieces);
+            gameBoard = player.getGameBoard();
+            simulator = player.getSimulator();
+        } else {
+            gameBoard = new GameBoard(rows, columns, sizeOfPieces, PieceGenerator.uniform(), previews);
+            simulator = new Simulator(gameBoard, gravity);
+        }
+        gameBoard.setMetrics(metrics);
+
+        if (recordTo != null) {
+            recorder = new ReplayWriter(recordTo, simulator, KEYFRAME_INTERVAL);
+            simulator.record(recorder);
+        }
+
+        snapshots = new SnapshotBuffer(gameBoard);
         Engine engine = new Engine();
-        gameBoard = new GameBoard(ROWS, COLUMNS, sizeOfPieces);
 
-        engine.setPreferredSize(new Dimension(COLUMNS * sizeOfPieces, ROWS * sizeOfPieces));
+        engine.setPreferredSize(new Dimension(gameBoard.getColumns() * sizeOfPieces,
+                gameBoard.getRows() * sizeOfPieces));
+        preview = new Preview();
+        preview.setPreferredSize(new Dimension(PreviewPainter.COLUMNS * sizeOfPieces,
+                preview.painter.getRows() * sizeOfPieces));
+
         Container cp = getContentPane();
-        cp.add(engine);
+        cp.add(fitToScreen(engine));
+        cp.add(preview, BorderLayout.EAST);
         addKeyListener(new MyKeyAdapter());
 
         return engine;
     }
 
+    /**
+     * Puts a board that is larger than the screen in a scroll pane.
+     * @param engine    the panel of the board
+     * @return          the panel, or a scroll pane holding it
+     */
+    private Component fitToScreen (Engine engine) {
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        Dimension size = engine.getPreferredSize();
+        if (size.width <= screen.width && size.height <= screen.height * 9 / 10) return engine;
+
+        JScrollPane scroller = new JScrollPane(engine);
+        scroller.setPreferredSize(new Dimension(Math.min(size.width, screen.width * 9 / 10) + 20,
+                Math.min(size.height, screen.height * 8 / 10)));
+
+        // The arrow keys move the piece, not the view.
+        scroller.setInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT, new InputMap());
+        return scroller;
+    }
+
     private void setWindowProperties () {
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing (WindowEvent windowEvent) {
+                // Let the loop finish its tick, so the replay is complete when it is closed.
+                loop.stop();
+                try {
+                    loopThread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                closeRecorder();
+            }
+        });
         setTitle("Lazo's Tetris");
         setResizable(false);
         pack();
@@ -43,45 +138,95 @@ public class Window extends JFrame {
     }
 
     private void startGame () {
-        Thread th = new Thread(engine);
-        th.start();
+        loop = new GameLoop(this::tick, this::render, TICKS_PER_SECOND, FRAMES_PER_SECOND);
+        loop.setMetrics(metrics);
+        loopThread = loop.start();
     }
 
     /**
-     * Contains the game loop.
+     * Applies the inputs that have arrived since the last tick, then lets the piece
+     * fall by gravity. Pieces fall faster once the level goes up.
      */
-    private class Engine extends JPanel implements Runnable {
+    private void tick () {
+        long start = System.nanoTime();
+        long allocated = metrics.allocatedBytes();
 
-        public void run () {
+        if (player != null) {
+            replay();
+        } else {
+            inputs.drain(applyInput, INPUTS_PER_TICK);
 
-            long before = System.nanoTime();
-            double elapsedTime = 0.0;
-            double FPS = 2.0;
+            checkGameOver(simulator.tick());
+        }
 
-            while (true) {
+        metrics.tick(System.nanoTime() - start, metrics.allocatedBytes() - allocated);
+    }
 
-                long now = System.nanoTime();
-                elapsedTime += ((now-before)/1_000_000_000.0) * FPS;
-                before = System.nanoTime();
+    /**
+     * Plays the commands of the replay that happened on this tick, instead of
+     * taking input and applying gravity.
+     */
+    private void replay () {
+        player.playUntil(loop.getTicks() - 1);
 
-                if (elapsedTime >= 1) {
-                    gameBoard.moveDown();
-                    elapsedTime--;
-                }
+        if (!player.hasNext()) {
+            System.out.println("End of replay. Final Score: " + simulator.getScore());
+            System.exit(0);
+        }
+    }
 
-                try {
-                    sleep(10);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+    /**
+     * Publishes the board and repaints the part of it that has changed, if any,
+     * along with the held and next pieces.
+     */
+    private void render () {
+        Rectangle region = gameBoard.takeDirtyRegion();
+        if (region != null) {
+            snapshots.publish(gameBoard, region);
+            engine.repaint(region);
+            preview.repaint();
+        }
+    }
 
-                repaint();
-            }
+    private void apply (Simulator.Input input, long offeredAt) {
+        metrics.input(System.nanoTime() - offeredAt);
+        checkGameOver(simulator.apply(input));
+    }
 
+    /**
+     * Prints the final score and exits if the game is over.
+     * @param result    the result of the last step or input
+     */
+    private void checkGameOver (Simulator.Result result) {
+        if (result == Simulator.Result.GAME_OVER) {
+            closeRecorder();
+            System.out.println("Final Score: " + simulator.getScore() + ", Level " + gameBoard.getLevel());
+            System.exit(0);
         }
+    }
+
+    private void closeRecorder () {
+        if (recorder == null) return;
+
+        try {
+            recorder.end(simulator.getTick());
+            recorder.close();
+        } catch (IOException ex) {
+            System.err.println("Could not write the replay: " + ex.getMessage());
+        }
+        recorder = null;
+    }
+
+    /**
+     * Displays the game board.
+     */
+    private class Engine extends JPanel {
+
+        private final BoardPainter painter = new BoardPainter(gameBoard.getRows(), gameBoard.getColumns(), sizeOfPieces);
 
         @Override
         protected void paintComponent(Graphics graphics) {
+            long start = System.nanoTime();
             super.paintComponent(graphics);
 
             // Ensures that it will run smoothly on Linux.
@@ -89,7 +234,23 @@ public class Window extends JFrame {
                 Toolkit.getDefaultToolkit().sync();
             }
 
-            gameBoard.paint(graphics);
+            painter.paint(graphics, snapshots.latest());
+            metrics.render(System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * Displays the held piece and the pieces that come next.
+     */
+    private class Preview extends JPanel {
+
+        private final PreviewPainter painter = new PreviewPainter(gameBoard.getPreview().getDepth(), sizeOfPieces);
+
+        @Override
+        protected void paintComponent(Graphics graphics) {
+            super.paintComponent(graphics);
+            painter.paint(graphics, snapshots.latest());
         }
 
     }
@@ -100,29 +261,82 @@ public class Window extends JFrame {
         public void keyPressed(KeyEvent keyEvent) {
             super.keyPressed(keyEvent);
 
+            Simulator.Input input = null;
+
             if (keyEvent.getKeyCode() == KeyEvent.VK_LEFT) {
-                gameBoard.moveLeft();
+                input = Simulator.Input.LEFT;
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_RIGHT) {
-                gameBoard.moveRight();
+                input = Simulator.Input.RIGHT;
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_UP) {
-                gameBoard.rotateClockwise();
+                input = Simulator.Input.ROTATE_CLOCKWISE;
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_DOWN) {
-                gameBoard.moveDown();
+                input = Simulator.Input.SOFT_DROP;
             } else if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER) {
-                while (gameBoard.moveDown()) ;
+                input = Simulator.Input.HARD_DROP;
+            } else if (keyEvent.getKeyCode() == KeyEvent.VK_C || keyEvent.getKeyCode() == KeyEvent.VK_SHIFT) {
+                input = Simulator.Input.HOLD;
             }
 
-            engine.repaint();
+            if (input != null) {
+                inputs.offer(input);
+            }
         }
 
     }
 
+    /**
+     * Starts the game.
+     * @param args  -p for small squares, -rows N and -columns N for the size of the
+     *              board (at most 64 columns), -previews N for the number of pieces
+     *              shown ahead (at most 16), -gravity N for pieces that fall N rows
+     *              a second on every level, -record FILE to record the game to a
+     *              replay, -replay FILE to watch a replay instead of playing, and
+     *              -metrics FILE to write the metrics to a CSV file every second
+     */
     public static void main (String[] args) {
-        if (args.length == 1 && args[0].equals("-p")) {
-            sizeOfPieces = 10;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-p")) {
+                sizeOfPieces = 10;
+            } else if (args[i].equals("-rows") && i + 1 < args.length) {
+                rows = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-columns") && i + 1 < args.length) {
+                columns = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-previews") && i + 1 < args.length) {
+                previews = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-gravity") && i + 1 < args.length) {
+                gravity = GravityTable.constant(Double.parseDouble(args[++i]), TICKS_PER_SECOND);
+            } else if (args[i].equals("-record") && i + 1 < args.length) {
+                recordTo = Path.of(args[++i]);
+            } else if (args[i].equals("-replay") && i + 1 < args.length) {
+                replayFrom = Path.of(args[++i]);
+            } else if (args[i].equals("-metrics") && i + 1 < args.length) {
+                metricsTo = Path.of(args[++i]);
+            }
+        }
+
+        if (rows < 4 || columns < 4 || columns > Long.SIZE) {
+            System.err.println("The board must have at least 4 rows and 4 to 64 columns.");
+            System.exit(1);
+        }
+        if (previews < 0 || previews > MAX_PREVIEWS) {
+            System.err.println("The preview can show 0 to " + MAX_PREVIEWS + " pieces.");
+            System.exit(1);
+        }
+
+        // The painter keeps images of the whole board, so the squares of a huge
+        // board are made smaller to keep the images to a sensible size.
+        while (sizeOfPieces > 1 && (long) rows * columns * sizeOfPieces * sizeOfPieces > MAX_BOARD_PIXELS) {
+            sizeOfPieces--;
         }
 
-        SwingUtilities.invokeLater(() -> new Window());
+        SwingUtilities.invokeLater(() -> {
+            try {
+                new Window();
+            } catch (IOException ex) {
+                System.err.println("Could not open a file: " + ex.getMessage());
+                System.exit(1);
+            }
+        });
     }
 
 }
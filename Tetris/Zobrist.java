@@ -0,0 +1,63 @@
+/**
+ * Zobrist-style hashing of boards and pieces, used to spot the same position when
+ * it is reached in different ways.
+ * <br/>
+ * The hash of a board is the XOR of a key for each row, where the key is worked
+ * out from the row index and the mask of the row. An empty row has a key of zero.
+ * Changing a row only needs the old and the new key of that row, so the hash can be
+ * kept up to date as squares are set and rows are moved. The keys are computed by
+ * mixing rather than read from a table, so the hash costs no memory however large
+ * the board is.
+ */
+final class Zobrist {
+
+    private Zobrist () {
+    }
+
+    /**
+     * @param row   the index of the row
+     * @param mask  the mask of the row
+     * @return      the key of the row, which is zero if the row is empty
+     */
+    static long rowKey (int row, long mask) {
+        if (mask == 0) return 0;
+        return mix(mask * 0x9E3779B97F4A7C15L + row);
+    }
+
+    /**
+     * @param board     the mask of each row of a board
+     * @return          the hash of the board
+     */
+    static long hash (long[] board) {
+        long hash = 0;
+        for (int row = 0; row < board.length; row++) {
+            hash ^= rowKey(row, board[row]);
+        }
+        return hash;
+    }
+
+    /**
+     * @param shape     the shape of a piece
+     * @param slot      where the piece is, 0 for the dropping piece and 1 onwards for the pieces after it
+     * @return          the key of the piece
+     */
+    static long pieceKey (Piece.Shape shape, int slot) {
+        return mix(~((long) slot << 8 | shape.ordinal()));
+    }
+
+    /**
+     * @param depth     how many more pieces a search looks at
+     * @return          the key of the depth
+     */
+    static long depthKey (int depth) {
+        return mix(0xD1B54A32D192ED03L * (depth + 1));
+    }
+
+    // The finalizer of SplitMix64.
+    private static long mix (long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
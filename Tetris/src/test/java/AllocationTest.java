@@ -0,0 +1,62 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that moving and dropping pieces allocates nothing once the code is warm.
+ * <br/>
+ * The bytes are counted by the JVM for the thread that runs the test, around a loop
+ * that moves each piece, drops it one row at a time until it locks, and so spawns
+ * the next one. Boards are built before the count starts, as a board allocates its
+ * rows and queue up front.
+ */
+public class AllocationTest {
+
+    private static final int ROWS = 4000;
+    private static final int COLUMNS = 10;
+    private static final int PIECES = 5000;
+    private static final int WARMUP = 3;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public void testMoveAndDropAllocateNothing () {
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int round = 0; round < WARMUP; round++) {
+            play(new GameBoard(ROWS, COLUMNS, PieceGenerator.bag(round)));
+        }
+
+        GameBoard board = new GameBoard(ROWS, COLUMNS, PieceGenerator.bag(WARMUP));
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int pieces = play(board);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        if (pieces < PIECES / 2) {
+            throw new AssertionError("Only " + pieces + " pieces were dropped");
+        }
+        if (allocated != 0) {
+            throw new AssertionError(allocated + " bytes were allocated dropping " + pieces + " pieces");
+        }
+    }
+
+    /**
+     * Moves each piece a few columns to one side and drops it, until the game is over.
+     * @return      the number of pieces that were dropped
+     */
+    private static int play (GameBoard board) {
+        int pieces = 0;
+        while (!board.isGameOver() && pieces < PIECES) {
+            for (int i = 0; i < pieces % 5; i++) {
+                if (pieces % 2 == 0) board.moveLeft();
+                else board.moveRight();
+            }
+            if (pieces % 3 == 0) board.rotateClockwise();
+            while (board.moveDown()) {
+                // Falls a row, and locks the piece once it lands.
+            }
+            pieces++;
+        }
+        return pieces;
+    }
+
+}
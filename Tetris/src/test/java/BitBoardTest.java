@@ -0,0 +1,165 @@
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the counters a BitBoard keeps up to date, the height of each column,
+ * the aggregate height, the holes and the full rows, match a full scan of its rows.
+ * <br/>
+ * The board is changed at random: Squares are set as pieces would lock them, some
+ * rows are filled so they can be cleared, full rows are removed, and garbage rows
+ * are inserted, sometimes pushing Squares off the top.
+ */
+public class BitBoardTest {
+
+    private static final int ROWS = 30;
+    private static final int COLUMNS = 10;
+    private static final int STEPS = 50_000;
+    private static final int GAME_COLUMNS = 6;   // Narrow, so random drops clear lines.
+    private static final int PIECES = 20_000;
+
+    public void testCountersMatchAFullScan () {
+        SplittableRandom random = new SplittableRandom(3);
+        BitBoard board = new BitBoard(ROWS, COLUMNS);
+        long fullRow = BitBoard.fullRow(COLUMNS);
+        int removed = 0;
+        int inserted = 0;
+
+        for (int step = 0; step < STEPS; step++) {
+            int action = random.nextInt(10);
+            if (action < 6) {
+                // A lock sets a few Squares near one another.
+                int row = random.nextInt(ROWS);
+                int column = random.nextInt(COLUMNS);
+                for (int i = 0; i < 4; i++) {
+                    board.set(clamp(row + random.nextInt(-1, 2), ROWS),
+                            clamp(column + random.nextInt(-1, 2), COLUMNS), 1);
+                }
+            } else if (action < 7) {
+                int row = ROWS - 1 - random.nextInt(ROWS / 3);
+                for (int column = 0; column < COLUMNS; column++) board.set(row, column, 1);
+            } else if (action < 9) {
+                int full = countFullRows(board, fullRow);
+                int count = board.removeFullRows(ROWS - 1);
+                assertEquals("step " + step + ": rows removed", full, count);
+                removed += count;
+            } else {
+                long mask = fullRow & ~(1L << random.nextInt(COLUMNS));
+                board.insertRows(1 + random.nextInt(3), mask, 2);
+                inserted++;
+            }
+
+            assertCounters("step " + step, board);
+            if (board.getTop() < 2) board.clear();
+        }
+
+        if (removed < 1000 || inserted < 1000) {
+            throw new AssertionError("Only " + removed + " rows removed and " + inserted + " inserts");
+        }
+    }
+
+    public void testCountersMatchAFullScanInGames () {
+        SplittableRandom random = new SplittableRandom(5);
+        int lines = 0;
+        int pieces = 0;
+
+        for (long seed = 0; pieces < PIECES; seed++) {
+            GameBoard board = new GameBoard(ROWS, GAME_COLUMNS, PieceGenerator.bag(seed));
+            while (!board.isGameOver() && pieces < PIECES) {
+                for (int i = random.nextInt(4); i > 0; i--) board.rotateClockwise();
+                for (int i = random.nextInt(GAME_COLUMNS); i > 0; i--) {
+                    if (random.nextBoolean()) board.moveLeft();
+                    else board.moveRight();
+                }
+                board.hardDrop();
+                lines += board.getLastCleared();
+                pieces++;
+                if (random.nextInt(8) == 0) board.addGarbage(1 + random.nextInt(2), random.nextInt(GAME_COLUMNS));
+
+                assertCounters("seed " + seed, board);
+            }
+        }
+
+        if (lines < 100) throw new AssertionError("Only " + lines + " lines were cleared");
+    }
+
+    private static void assertCounters (String where, BitBoard board) {
+        long[] masks = new long[ROWS];
+        board.copyMasks(masks);
+        Scan scan = new Scan(masks, COLUMNS);
+        for (int column = 0; column < COLUMNS; column++) {
+            assertEquals(where + ": height of column " + column, scan.heights[column], board.getHeight(column));
+        }
+        assertEquals(where + ": aggregate height", scan.aggregate, board.getAggregateHeight());
+        assertEquals(where + ": bumpiness", scan.bumpiness, board.getBumpiness());
+        assertEquals(where + ": holes", scan.holes, board.getHoles());
+        assertEquals(where + ": top", scan.top, board.getTop());
+    }
+
+    private static void assertCounters (String where, GameBoard board) {
+        long[] masks = new long[ROWS];
+        board.copyMasks(masks);
+        Scan scan = new Scan(masks, GAME_COLUMNS);
+        for (int column = 0; column < GAME_COLUMNS; column++) {
+            assertEquals(where + ": height of column " + column, scan.heights[column], board.getColumnHeight(column));
+        }
+        assertEquals(where + ": aggregate height", scan.aggregate, board.getAggregateHeight());
+        assertEquals(where + ": bumpiness", scan.bumpiness, board.getBumpiness());
+        assertEquals(where + ": holes", scan.holes, board.getHoles());
+        assertEquals(where + ": top", scan.top, board.getStackTop());
+        assertEquals(where + ": full rows", 0, countFullRows(masks, BitBoard.fullRow(GAME_COLUMNS)));
+    }
+
+    private static int countFullRows (BitBoard board, long fullRow) {
+        long[] masks = new long[ROWS];
+        board.copyMasks(masks);
+        return countFullRows(masks, fullRow);
+    }
+
+    private static int countFullRows (long[] masks, long fullRow) {
+        int full = 0;
+        for (long mask : masks) {
+            if (mask == fullRow) full++;
+        }
+        return full;
+    }
+
+    private static int clamp (int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private static void assertEquals (String what, long expected, long actual) {
+        if (expected != actual) throw new AssertionError(what + " was " + actual + ", expected " + expected);
+    }
+
+    /**
+     * The counters of a board, worked out by looking at every Square.
+     */
+    private static final class Scan {
+
+        final int[] heights;
+        int aggregate = 0;
+        int bumpiness = 0;
+        int holes = 0;
+        int top = ROWS;
+
+        Scan (long[] masks, int columns) {
+            heights = new int[columns];
+            for (int column = 0; column < columns; column++) {
+                boolean seen = false;
+                for (int row = 0; row < ROWS; row++) {
+                    boolean filled = (masks[row] >>> column & 1) != 0;
+                    if (filled && !seen) {
+                        seen = true;
+                        heights[column] = ROWS - row;
+                        top = Math.min(top, row);
+                    } else if (!filled && seen) {
+                        holes++;
+                    }
+                }
+                aggregate += heights[column];
+                if (column > 0) bumpiness += Math.abs(heights[column] - heights[column - 1]);
+            }
+        }
+
+    }
+
+}
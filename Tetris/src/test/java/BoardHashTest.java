@@ -0,0 +1,59 @@
+import java.util.SplittableRandom;
+
+/**
+ * Checks that the hash a board keeps up to date as pieces lock, lines clear and
+ * garbage is added is the hash of its rows worked out from scratch.
+ * <br/>
+ * The games drop pieces at random on a narrow board, so lines are cleared often,
+ * and add garbage every few pieces, until enough of each has happened.
+ */
+public class BoardHashTest {
+
+    private static final int ROWS = 24;
+    private static final int COLUMNS = 6;
+    private static final int PIECES = 20_000;
+
+    public void testHashMatchesTheRows () {
+        SplittableRandom random = new SplittableRandom(1);
+        long[] masks = new long[ROWS];
+        int lines = 0;
+        int garbage = 0;
+        int pieces = 0;
+
+        for (long seed = 0; pieces < PIECES; seed++) {
+            GameBoard board = new GameBoard(ROWS, COLUMNS, PieceGenerator.bag(seed));
+            assertHash("new board", board, masks);
+
+            while (!board.isGameOver() && pieces < PIECES) {
+                for (int i = random.nextInt(4); i > 0; i--) board.rotateClockwise();
+                for (int i = random.nextInt(COLUMNS); i > 0; i--) {
+                    if (random.nextBoolean()) board.moveLeft();
+                    else board.moveRight();
+                }
+                board.hardDrop();
+                lines += board.getLastCleared();
+                pieces++;
+                assertHash("piece " + pieces, board, masks);
+
+                if (random.nextInt(6) == 0) {
+                    board.addGarbage(1 + random.nextInt(3), random.nextInt(COLUMNS));
+                    garbage++;
+                    assertHash("garbage after piece " + pieces, board, masks);
+                }
+            }
+        }
+
+        if (lines < 100 || garbage < 100) {
+            throw new AssertionError("Only " + lines + " lines and " + garbage + " garbage inserts");
+        }
+    }
+
+    private static void assertHash (String where, GameBoard board, long[] masks) {
+        board.copyMasks(masks);
+        long expected = Zobrist.hash(masks);
+        if (board.getBoardHash() != expected) {
+            throw new AssertionError(where + ": hash was " + board.getBoardHash() + ", expected " + expected);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that a DatasetReader reads back every field of the records a DatasetWriter
+ * wrote, and that a closed file holds the records and nothing after them.
+ * <br/>
+ * The records are random, and there are enough of them on the narrow board for
+ * the writer to fill its buffer several times before the last, partial one.
+ */
+public class DatasetTest {
+
+    private static final Piece.Shape[] SHAPES = Piece.Shape.values();
+
+    public void testRecordsReadBackAsWritten () throws IOException {
+        roundTrip(18, 10, 100_000, 1);
+        roundTrip(5, 64, 1000, 2);
+        roundTrip(4, 4, 0, 3);
+    }
+
+    public void testUnclosedFileIsRefused () throws IOException {
+        Path file = Files.createTempFile("dataset", ".bin");
+        try {
+            DatasetWriter writer = new DatasetWriter(file, 18, 10);
+            writer.write(new long[18], SHAPES[0], 0, 3, 1, false);
+            try {
+                new DatasetReader(file);
+                throw new AssertionError("A file that was not closed was read");
+            } catch (IOException expected) {
+                // The header still holds NOT_CLOSED.
+            } finally {
+                writer.close();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Writes random records, closes the file and reads them back.
+     * @param rows      the number of rows of the boards
+     * @param columns   the number of columns of the boards
+     * @param records   the number of records
+     * @param seed      the seed of the records
+     */
+    private static void roundTrip (int rows, int columns, int records, long seed) throws IOException {
+        Path file = Files.createTempFile("dataset", ".bin");
+        try {
+            long fullRow = BitBoard.fullRow(columns);
+            long[] board = new long[rows];
+
+            SplittableRandom random = new SplittableRandom(seed);
+            try (DatasetWriter writer = new DatasetWriter(file, rows, columns)) {
+                for (int i = 0; i < records; i++) {
+                    for (int row = 0; row < rows; row++) board[row] = random.nextLong() & fullRow;
+                    writer.write(board, SHAPES[random.nextInt(SHAPES.length)], random.nextInt(4),
+                            random.nextInt(-2, columns), (float) random.nextDouble(), random.nextInt(100) == 0);
+                }
+            }
+
+            String where = rows + "x" + columns;
+            assertEquals(where + ": file size", DatasetWriter.HEADER
+                    + (long) records * DatasetWriter.recordSize(rows, columns), Files.size(file));
+
+            DatasetReader reader = new DatasetReader(file);
+            assertEquals(where + ": rows", rows, reader.getRows());
+            assertEquals(where + ": columns", columns, reader.getColumns());
+            assertEquals(where + ": count", records, reader.getCount());
+
+            random = new SplittableRandom(seed);
+            long[] read = new long[rows];
+            for (int i = 0; i < records; i++) {
+                String record = where + " record " + i;
+                reader.copyMasks(i, read);
+                for (int row = 0; row < rows; row++) {
+                    assertEquals(record + ": row " + row, random.nextLong() & fullRow, read[row]);
+                }
+                assertEquals(record + ": shape", random.nextInt(SHAPES.length), reader.getShape(i).ordinal());
+                assertEquals(record + ": rotation", random.nextInt(4), reader.getRotation(i));
+                assertEquals(record + ": x", random.nextInt(-2, columns), reader.getX(i));
+                assertEquals(record + ": reward", Float.floatToIntBits((float) random.nextDouble()),
+                        Float.floatToIntBits(reader.getReward(i)));
+                assertEquals(record + ": done", random.nextInt(100) == 0 ? 1 : 0, reader.isDone(i) ? 1 : 0);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertEquals (String what, long expected, long actual) {
+        if (expected != actual) throw new AssertionError(what + " was " + actual + ", expected " + expected);
+    }
+
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that a replay plays back the game it recorded, from the start and from
+ * its keyframes.
+ * <br/>
+ * The games are played with random inputs on random ticks, under the guideline
+ * gravity, so pieces are locked both by inputs and by gravity between them.
+ */
+public class ReplayTest {
+
+    private static final int TICKS_PER_SECOND = 60;
+    private static final long MAX_TICKS = 200_000;
+
+    public void testPlaybackMatchesTheRecordedGame () throws IOException {
+        for (long seed = 0; seed < 4; seed++) {
+            Path file = Files.createTempFile("replay", ".rep");
+            try {
+                Simulator recorded = record(file, seed, 3);
+                ReplayPlayer player = new ReplayPlayer(file);
+                player.playToEnd();
+                assertSameGame("seed " + seed, recorded, player.getSimulator());
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    public void testSeekMatchesStraightPlayback () throws IOException {
+        Path file = Files.createTempFile("replay", ".rep");
+        try {
+            Simulator recorded = record(file, 7, 4);
+            long end = recorded.getTick();
+
+            ReplayPlayer straight = new ReplayPlayer(file);
+            ReplayPlayer seeking = new ReplayPlayer(file);
+            for (long tick = 0; tick <= end; tick += 997) {
+                straight.playUntil(tick);
+                seeking.seek(tick);
+                assertSameGame("tick " + tick, straight.getSimulator(), seeking.getSimulator());
+            }
+
+            // Seeking backwards restores an earlier keyframe.
+            ReplayPlayer again = new ReplayPlayer(file);
+            again.playUntil(end / 2);
+            seeking.seek(end / 2);
+            assertSameGame("back to tick " + end / 2, again.getSimulator(), seeking.getSimulator());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testGravityIsNotRecorded () throws IOException {
+        Path file = Files.createTempFile("replay", ".rep");
+        try {
+            GameBoard gameBoard = new GameBoard(2000, 10, PieceGenerator.bag(1));
+            Simulator simulator = new Simulator(gameBoard, GravityTable.of(GravityTable.MAX));
+            try (ReplayWriter writer = new ReplayWriter(file, simulator, Integer.MAX_VALUE)) {
+                simulator.record(writer);
+                while (!simulator.isGameOver()) simulator.tick();
+                writer.end(simulator.getTick());
+            }
+
+            // Only the header, the end and an empty index, however far the pieces fell.
+            if (Files.size(file) > 64) {
+                throw new AssertionError(Files.size(file) + " bytes for " + simulator.getPieces() + " pieces");
+            }
+
+            ReplayPlayer player = new ReplayPlayer(file);
+            player.playToEnd();
+            assertSameGame("20G", simulator, player.getSimulator());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Plays a game with random inputs until it is over, recording it.
+     * @param file      the replay to write
+     * @param seed      the seed of the pieces and the inputs
+     * @param interval  the number of pieces between keyframes
+     * @return          the simulator of the finished game
+     */
+    private static Simulator record (Path file, long seed, int interval) throws IOException {
+        Simulator.Input[] inputs = Simulator.Input.values();
+        SplittableRandom random = new SplittableRandom(seed);
+        GameBoard gameBoard = new GameBoard(40, 10, PieceGenerator.bag(seed));
+        Simulator simulator = new Simulator(gameBoard, GravityTable.guideline(TICKS_PER_SECOND));
+
+        try (ReplayWriter writer = new ReplayWriter(file, simulator, interval)) {
+            simulator.record(writer);
+            while (!simulator.isGameOver() && simulator.getTick() < MAX_TICKS) {
+                // A few inputs on some ticks, and none on most.
+                if (random.nextInt(4) == 0) {
+                    for (int i = random.nextInt(3); i >= 0; i--) {
+                        Simulator.Input input = inputs[random.nextInt(inputs.length)];
+                        if (input == Simulator.Input.HARD_DROP && random.nextInt(8) != 0) continue;
+                        simulator.apply(input);
+                    }
+                }
+                simulator.tick();
+            }
+            writer.end(simulator.getTick());
+        }
+
+        if (simulator.getPieces() < 20) throw new AssertionError("Only " + simulator.getPieces() + " pieces");
+        return simulator;
+    }
+
+    private static void assertSameGame (String where, Simulator expected, Simulator actual) {
+        GameBoard a = expected.getGameBoard();
+        GameBoard b = actual.getGameBoard();
+        assertEquals(where + ": tick", expected.getTick(), actual.getTick());
+        assertEquals(where + ": board hash", a.getBoardHash(), b.getBoardHash());
+        assertEquals(where + ": score", a.getScore(), b.getScore());
+        assertEquals(where + ": lines", a.getLines(), b.getLines());
+        assertEquals(where + ": pieces", expected.getPieces(), actual.getPieces());
+        assertEquals(where + ": fallen", expected.getFallen(), actual.getFallen());
+        assertEquals(where + ": game over", a.isGameOver() ? 1 : 0, b.isGameOver() ? 1 : 0);
+        assertEquals(where + ": shape", a.getPiece().getShape().ordinal(), b.getPiece().getShape().ordinal());
+        assertEquals(where + ": x", a.getPiece().getX(), b.getPiece().getX());
+        assertEquals(where + ": y", a.getPiece().getY(), b.getPiece().getY());
+        assertEquals(where + ": rotation", a.getPiece().getRotationIndex(), b.getPiece().getRotationIndex());
+    }
+
+    private static void assertEquals (String what, long expected, long actual) {
+        if (expected != actual) throw new AssertionError(what + " was " + actual + ", expected " + expected);
+    }
+
+}
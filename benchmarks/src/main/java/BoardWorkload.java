@@ -0,0 +1,94 @@
+import benchmarks.Workload;
+
+import java.awt.*;
+
+/**
+ * Implements the benchmarked operations on the game classes. It is in the default
+ * package so it can reach them, see Workload.
+ */
+public class BoardWorkload implements Workload {
+
+    private int rows, columns, size;
+    private long seed;
+
+    private GameBoard gameBoard;
+    private BitBoard bitBoard;
+    private FrameRenderer renderer;
+    private Snapshot snapshot;
+
+    @Override
+    public void reset (int rows, int columns, int size, long seed) {
+        this.rows = rows;
+        this.columns = columns;
+        this.size = size;
+        this.seed = seed;
+
+        gameBoard = new GameBoard(rows, columns, size, PieceGenerator.bag(seed));
+        bitBoard = new BitBoard(rows, columns);
+        renderer = new FrameRenderer(rows, columns, size);
+        snapshot = new Snapshot(rows, columns, 0);
+    }
+
+    @Override
+    public void stack (int pieces) {
+        for (int i = 0; i < pieces && !gameBoard.isGameOver(); i++) {
+            for (int j = 0; j < i % columns; j++) {
+                if (i % 2 == 0) gameBoard.moveLeft();
+                else gameBoard.moveRight();
+            }
+            while (gameBoard.moveDown()) ;
+        }
+    }
+
+    @Override
+    public boolean moveLeftRight () {
+        return gameBoard.moveLeft() & gameBoard.moveRight();
+    }
+
+    @Override
+    public boolean rotateClockwise () {
+        return gameBoard.rotateClockwise();
+    }
+
+    @Override
+    public int hardDrop () {
+        int squares = 0;
+        while (gameBoard.moveDown()) squares++;
+
+        if (gameBoard.isGameOver()) {
+            gameBoard = new GameBoard(rows, columns, size, PieceGenerator.bag(++seed));
+        }
+        return squares;
+    }
+
+    @Override
+    public void fillLines (int lines) {
+        bitBoard = new BitBoard(rows, columns);
+
+        // A ragged stack above the full rows, so the rows moved down are not empty.
+        for (int row = rows / 2; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (row >= rows - lines || (row + column) % 3 != 0) {
+                    bitBoard.set(row, column, -1 - (column % 7));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int clear () {
+        return bitBoard.removeFullRows(rows - 1);
+    }
+
+    @Override
+    public void paint (Graphics graphics) {
+        gameBoard.paint(graphics);
+    }
+
+    @Override
+    public void render (int[] pixels) {
+        gameBoard.copyTo(snapshot);
+        renderer.render(snapshot, pixels);
+    }
+
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dropping a piece from the top of the board until it locks, including the line
+ * clears and the spawn of the next piece.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HardDropBenchmark {
+
+    @Param({"18", "1000"})
+    private int rows;
+
+    @Param({"10"})
+    private int columns;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp () {
+        workload = Workload.create();
+        workload.reset(rows, columns, 0, 1);
+    }
+
+    @Benchmark
+    public int hardDrop () {
+        return workload.hardDrop();
+    }
+
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clearing one to four full rows at once at the bottom of a tall board, so every
+ * clear moves the whole stack above it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineClearBenchmark {
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    @Param({"10"})
+    private int columns;
+
+    @Param({"1", "2", "3", "4"})
+    private int lines;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        workload = Workload.create();
+        workload.reset(rows, columns, 0, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill () {
+        workload.fillLines(lines);
+    }
+
+    @Benchmark
+    public int clear () {
+        return workload.clear();
+    }
+
+}
@@ -0,0 +1,27 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results to a JSON file, so that a later run
+ * can be compared against them. Takes the usual JMH options, so -rff picks another
+ * file and a regex picks which benchmarks to run.
+ */
+public class Main {
+
+    public static void main (String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+
+        new Runner(new OptionsBuilder()
+                .parent(options)
+                .resultFormat(options.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(options.getResult().orElse("benchmarks.json"))
+                .build()).run();
+    }
+
+}
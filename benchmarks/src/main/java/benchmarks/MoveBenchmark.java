@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating and making the moves of the dropping piece.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+    @Param({"18"})
+    private int rows;
+
+    @Param({"10"})
+    private int columns;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp () {
+        workload = Workload.create();
+        workload.reset(rows, columns, 0, 1);
+        workload.hardDrop();
+    }
+
+    @Benchmark
+    public boolean moveLeftRight () {
+        return workload.moveLeftRight();
+    }
+
+    @Benchmark
+    public boolean rotateClockwise () {
+        return workload.rotateClockwise();
+    }
+
+}
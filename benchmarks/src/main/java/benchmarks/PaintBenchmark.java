@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Painting a whole frame of a board with a stack on it into an offscreen image,
+ * through Java2D and straight into the pixels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({"18"})
+    private int rows;
+
+    @Param({"10"})
+    private int columns;
+
+    @Param({"10", "35"})
+    private int size;
+
+    private Workload workload;
+    private BufferedImage image;
+    private Graphics2D graphics;
+    private int[] pixels;
+
+    @Setup
+    public void setUp () {
+        workload = Workload.create();
+        workload.reset(rows, columns, size, 1);
+        workload.stack(rows * columns / 8);
+
+        image = new BufferedImage(columns * size, rows * size, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+        pixels = new int[columns * size * rows * size];
+    }
+
+    @TearDown
+    public void tearDown () {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint () {
+        workload.paint(graphics);
+        return image;
+    }
+
+    @Benchmark
+    public int[] render () {
+        workload.render(pixels);
+        return pixels;
+    }
+
+}
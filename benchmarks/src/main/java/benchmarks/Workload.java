@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.awt.Graphics;
+
+/**
+ * The operations that are benchmarked.
+ * <br/>
+ * The game is written in the default package, which JMH does not allow benchmarks
+ * to be in, and which classes in a named package cannot refer to. The benchmarks
+ * therefore drive the game through this interface, and BoardWorkload in the
+ * default package implements it. There is only one implementation, so the calls
+ * are inlined by the JIT and do not show up in the results.
+ */
+public interface Workload {
+
+    /**
+     * Starts a new game.
+     * @param rows      the number of rows
+     * @param columns   the number of columns
+     * @param size      the size of each square, in pixels
+     * @param seed      the seed for the pieces
+     */
+    void reset (int rows, int columns, int size, long seed);
+
+    /**
+     * Drops a few pieces straight down, so the board has a stack to paint.
+     * @param pieces    the number of pieces to drop
+     */
+    void stack (int pieces);
+
+    /**
+     * Moves the dropping piece one Square left and back to the right.
+     * @return      true if both moves were made
+     */
+    boolean moveLeftRight ();
+
+    /**
+     * @return      true if the dropping piece was rotated clockwise
+     */
+    boolean rotateClockwise ();
+
+    /**
+     * Moves the dropping piece down until it locks, starting a new game if it
+     * was the last piece.
+     * @return      the number of Squares the piece dropped
+     */
+    int hardDrop ();
+
+    /**
+     * Fills the bottom rows of the settled squares, ready for clear().
+     * @param lines     the number of full rows, from 1 to 4
+     */
+    void fillLines (int lines);
+
+    /**
+     * Clears the full rows among the bottom four rows, the way GameBoard does
+     * after a piece is locked.
+     * @return      the number of rows cleared
+     */
+    int clear ();
+
+    /**
+     * Paints the board.
+     * @param graphics  what to paint on
+     */
+    void paint (Graphics graphics);
+
+    /**
+     * Copies the board and draws it straight into packed pixels, without Java2D.
+     * @param pixels    receives the frame, one int per pixel, row by row
+     */
+    void render (int[] pixels);
+
+    /**
+     * @return      a new instance of the implementation in the default package
+     */
+    static Workload create () {
+        try {
+            return (Workload) Class.forName("BoardWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BoardWorkload is not on the class path", ex);
+        }
+    }
+
+}